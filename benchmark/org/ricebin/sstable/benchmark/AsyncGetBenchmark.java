@@ -0,0 +1,93 @@
+package org.ricebin.sstable.benchmark;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.ricebin.slice.ByteBufferSlice;
+import org.ricebin.slice.Slice;
+import org.ricebin.slice.Slice.Factory.Sink;
+import org.ricebin.sstable.BloomFilterPolicy;
+import org.ricebin.sstable.ReadExecutor;
+import org.ricebin.sstable.Table;
+
+// Each invocation issues `outstanding` lookups at once and waits for all of them, so
+// keys/s = ops/s * outstanding. Throughput should keep scaling with outstanding until the device
+// queue (or maxInFlight) saturates.
+public class AsyncGetBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class MyState {
+
+    private static final int NUM_KEYS = 1 << 16;
+
+    @Param({"1", "4", "16", "64", "256"})
+    public int outstanding;
+
+    private Table table;
+    private ReadExecutor executor;
+    private ExecutorService threads;
+    private Slice[] keys;
+    private CompletableFuture<?>[] pending;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+      String filename =
+          "benchmark/org/ricebin/sstable/benchmark/testfiles/000005.sst";
+      table = Table.open(
+          new File(filename),
+          BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getReader(),
+          ByteBufferSlice.FACTORY);
+
+      threads = Executors.newCachedThreadPool();
+      executor = new ReadExecutor(threads, outstanding);
+      pending = new CompletableFuture<?>[outstanding];
+
+      Random random = new Random();
+      keys = new Slice[NUM_KEYS];
+      for (int i = 0; i < NUM_KEYS; i++) {
+        Sink<ByteBufferSlice> keySink = ByteBufferSlice.FACTORY.newFixedSizeSink(24);
+        for (int j = 0; j < 10; j++) {
+          keySink.putByte((byte) 48);
+        }
+        for (int j = 0; j < 14; j++) {
+          keySink.putByte((byte) random.nextInt(100));
+        }
+        keys[i] = keySink.finish();
+      }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+      threads.shutdown();
+      table.close();
+    }
+  }
+
+  @Benchmark
+  public void testGetAsync(MyState state) throws Exception {
+    for (int i = 0; i < state.outstanding; i++) {
+      Slice key = state.keys[state.next++ & (MyState.NUM_KEYS - 1)];
+      state.pending[i] = state.table.getAsync(key, state.executor);
+    }
+    CompletableFuture.allOf(state.pending).join();
+  }
+
+  @Benchmark
+  public void testGetAsyncDefaultExecutor(MyState state) throws Exception {
+    for (int i = 0; i < state.outstanding; i++) {
+      Slice key = state.keys[state.next++ & (MyState.NUM_KEYS - 1)];
+      state.pending[i] = state.table.getAsync(key);
+    }
+    CompletableFuture.allOf(state.pending).join();
+  }
+}
@@ -0,0 +1,119 @@
+package org.ricebin.sstable.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.ricebin.slice.ByteBufferSlice;
+import org.ricebin.slice.Slice;
+import org.ricebin.sstable.BinaryFuseFilterPolicy;
+import org.ricebin.sstable.BloomFilterPolicy;
+import org.ricebin.sstable.FastLocalBloomFilterPolicy;
+import org.ricebin.sstable.FilterPolicy;
+
+// Probes a filter of numKeys keys with keys that were not added, so every probe that returns
+// true is a false positive. jmh reports both counters as totals over the measurement iterations,
+// and falsePositives divided by probes is the false positive rate.
+// testCreateFilter measures construction, one op builds the whole filter.
+public class FilterPolicyBenchmark {
+
+  private static final int BITS_PER_KEY = 10;
+  private static final int NUM_PROBE_KEYS = 1 << 16;
+
+  @State(Scope.Benchmark)
+  public static class MyState {
+
+    @Param({"leveldb", "fastlocal", "binaryfuse"})
+    public String policy;
+
+    // 1M keys make a filter much larger than the L2 cache
+    @Param({"10000", "1000000"})
+    public int numKeys;
+
+    private FilterPolicy.Writer writer;
+    private FilterPolicy.Reader reader;
+    private List<Slice> keys;
+    private Slice filter;
+    private Slice[] presentKeys;
+    private Slice[] missingKeys;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+      switch (policy) {
+        case "leveldb":
+          writer = BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getWriter(BITS_PER_KEY);
+          reader = BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getReader();
+          break;
+        case "fastlocal":
+          writer = FastLocalBloomFilterPolicy.FAST_LOCAL_BLOOM_FILTER.getWriter(BITS_PER_KEY);
+          reader = FastLocalBloomFilterPolicy.FAST_LOCAL_BLOOM_FILTER.getReader();
+          break;
+        case "binaryfuse":
+          writer = BinaryFuseFilterPolicy.BINARY_FUSE8_FILTER.getWriter();
+          reader = BinaryFuseFilterPolicy.BINARY_FUSE8_FILTER.getReader();
+          break;
+        default:
+          throw new IllegalArgumentException(policy);
+      }
+
+      keys = new ArrayList<>(numKeys);
+      for (int i = 0; i < numKeys; i++) {
+        keys.add(newSlice(String.format("%016d", i)));
+      }
+      byte[] filterBytes = writer.createFilter(keys);
+      filter = ByteBufferSlice.FACTORY.wrap(filterBytes, 0, filterBytes.length);
+
+      presentKeys = new Slice[NUM_PROBE_KEYS];
+      missingKeys = new Slice[NUM_PROBE_KEYS];
+      for (int i = 0; i < NUM_PROBE_KEYS; i++) {
+        presentKeys[i] = keys.get((int) ((i * 2654435761L) % numKeys));
+        missingKeys[i] = newSlice(String.format("missing%09d", i));
+      }
+    }
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Counters {
+
+    public long falsePositives;
+    public long probes;
+    private int next;
+
+    int nextIndex() {
+      return next++ & (NUM_PROBE_KEYS - 1);
+    }
+  }
+
+  @Benchmark
+  public boolean testProbeMissing(MyState state, Counters counters) {
+    Slice key = state.missingKeys[counters.nextIndex()];
+    boolean match = state.reader.keyMayMatch(key, state.filter);
+    counters.probes++;
+    if (match) {
+      counters.falsePositives++;
+    }
+    return match;
+  }
+
+  @Benchmark
+  public boolean testProbePresent(MyState state, Counters counters) {
+    return state.reader.keyMayMatch(state.presentKeys[counters.nextIndex()], state.filter);
+  }
+
+  @Benchmark
+  public byte[] testCreateFilter(MyState state) {
+    return state.writer.createFilter(state.keys);
+  }
+
+  private static Slice newSlice(String s) {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    return ByteBufferSlice.FACTORY.wrap(bytes, 0, bytes.length);
+  }
+}
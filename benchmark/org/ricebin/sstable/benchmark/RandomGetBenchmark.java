@@ -9,6 +9,7 @@ import java.util.Map.Entry;
 import java.util.Random;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -16,7 +17,10 @@ import org.openjdk.jmh.annotations.TearDown;
 import org.ricebin.slice.ByteBufferSlice;
 import org.ricebin.slice.Slice;
 import org.ricebin.slice.Slice.Factory.Sink;
+import org.ricebin.sstable.BlockCache;
 import org.ricebin.sstable.BloomFilterPolicy;
+import org.ricebin.sstable.LookupScratch;
+import org.ricebin.sstable.Options;
 import org.ricebin.sstable.Table;
 
 public class RandomGetBenchmark {
@@ -57,6 +61,55 @@ public class RandomGetBenchmark {
     }
   }
 
+  // Keys are generated up front and the table has a block cache, so that `-prof gc` reports only
+  // what the lookup itself allocates.
+  @State(Scope.Thread)
+  public static class ScratchState {
+    private static final int NUM_KEYS = 1 << 16;
+
+    @Param({"false", "true"})
+    public boolean flatIndex;
+
+    private Table table;
+    private Slice[] keys;
+    private LookupScratch scratch;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+      String filename =
+          "benchmark/org/ricebin/sstable/benchmark/testfiles/000005.sst";
+      table = Table.open(
+          new File(filename),
+          BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getReader(),
+          ByteBufferSlice.FACTORY,
+          new Options().blockCache(new BlockCache(64 << 20)).flatIndex(flatIndex));
+      scratch = new LookupScratch();
+
+      Random random = new Random();
+      keys = new Slice[NUM_KEYS];
+      for (int i = 0; i < NUM_KEYS; i++) {
+        Sink<ByteBufferSlice> keySink = ByteBufferSlice.FACTORY.newFixedSizeSink(24);
+        for (int j = 0; j < 10; j++) {
+          keySink.putByte((byte) 48);
+        }
+        for (int j = 0; j < 14; j++) {
+          keySink.putByte((byte) random.nextInt(100));
+        }
+        keys[i] = keySink.finish();
+      }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+      table.close();
+    }
+
+    Slice nextKey() {
+      return keys[next++ & (NUM_KEYS - 1)];
+    }
+  }
+
   @Benchmark
   public void testIteratorNext(MyState state) {
     Iterator<Entry<Slice, Slice>> it = state.table.iterator(state.key);
@@ -72,4 +125,9 @@ public class RandomGetBenchmark {
     Slice value = state.table.get(state.key);
   }
 
+  @Benchmark
+  public boolean testGetWithScratch(ScratchState state) throws Exception {
+    return state.table.get(state.nextKey(), state.scratch);
+  }
+
 }
@@ -4,7 +4,6 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
-import java.util.Comparator;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.ricebin.slice.Slice.Factory.ReusableSink;
 import org.ricebin.slice.Slice.Factory.Sink;
@@ -26,11 +25,25 @@ public class ByteBufferSlice implements Slice, Comparable<ByteBufferSlice> {
   @Override
   public int compareTo(ByteBufferSlice other) {
     int minLen = Math.min(len, other.len);
+    if (!buf.hasArray() || !other.buf.hasArray()) {
+      // read only or direct (e.g. memory mapped) buffers
+      for (int i = 0; i < minLen; i++) {
+        int v1 = buf.get(offset + i) & 0xFF; // zero extended
+        int v2 = other.buf.get(other.offset + i) & 0xFF; // zero extended
+        if (v1 != v2) {
+          return v1 - v2;
+        }
+      }
+      return len - other.len;
+    }
+
     byte[] a = buf.array();
     byte[] b = other.buf.array();
+    int aOffset = buf.arrayOffset() + offset;
+    int bOffset = other.buf.arrayOffset() + other.offset;
     for (int i = 0; i < minLen; i++) {
-      int v1 = a[offset + i] & 0xFF; // zero extended
-      int v2 = b[other.offset + i] & 0xFF; // zero extended
+      int v1 = a[aOffset + i] & 0xFF; // zero extended
+      int v2 = b[bOffset + i] & 0xFF; // zero extended
       if (v1 != v2) {
         return v1 - v2;
       }
@@ -248,11 +261,65 @@ public class ByteBufferSlice implements Slice, Comparable<ByteBufferSlice> {
     }
 
     @Override
-    public Comparator<ByteBufferSlice> comparator() {
-      return Comparator.naturalOrder();
+    public SliceComparator<ByteBufferSlice> comparator() {
+      return BYTEWISE_COMPARATOR;
     }
   };
 
+  // https://github.com/google/leveldb/blob/main/util/comparator.cc
+  private static final SliceComparator<ByteBufferSlice> BYTEWISE_COMPARATOR =
+      new SliceComparator<ByteBufferSlice>() {
+
+        @Override
+        public int compare(ByteBufferSlice a, ByteBufferSlice b) {
+          return a.compareTo(b);
+        }
+
+        @Override
+        public ByteBufferSlice findShortestSeparator(
+            ByteBufferSlice start, ByteBufferSlice limit) {
+          // Find length of common prefix
+          int minLength = Math.min(start.len, limit.len);
+          int diffIndex = 0;
+          while (diffIndex < minLength
+              && start.getByte(diffIndex) == limit.getByte(diffIndex)) {
+            diffIndex++;
+          }
+
+          if (diffIndex >= minLength) {
+            // Do not shorten if one string is a prefix of the other
+            return start;
+          }
+          int diffByte = start.getUnsignedByte(diffIndex);
+          if (diffByte < 0xff && diffByte + 1 < limit.getUnsignedByte(diffIndex)) {
+            return increment(start, diffIndex);
+          }
+          return start;
+        }
+
+        @Override
+        public ByteBufferSlice findShortSuccessor(ByteBufferSlice key) {
+          // Find first character that can be incremented
+          for (int i = 0; i < key.len; i++) {
+            if (key.getUnsignedByte(i) != 0xff) {
+              return increment(key, i);
+            }
+          }
+          // key is a run of 0xffs. Leave it alone.
+          return key;
+        }
+
+        // the first index bytes of key followed by its byte at index plus one
+        private ByteBufferSlice increment(ByteBufferSlice key, int index) {
+          byte[] result = new byte[index + 1];
+          for (int i = 0; i < index; i++) {
+            result[i] = key.getByte(i);
+          }
+          result[index] = (byte) (key.getByte(index) + 1);
+          return create(result);
+        }
+      };
+
   private static class SinkImpl implements Sink<ByteBufferSlice> {
 
     ByteBuffer sink;
@@ -4,7 +4,6 @@ package org.ricebin.slice;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.Comparator;
 
 // https://github.com/google/leveldb/blob/master/include/leveldb/slice.h
 public interface Slice {
@@ -76,7 +75,7 @@ public interface Slice {
 
     ByteBufferSlice empty();
 
-    Comparator<T> comparator();
+    SliceComparator<T> comparator();
 
     interface Sink<T extends Slice> {
 
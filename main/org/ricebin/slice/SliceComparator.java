@@ -0,0 +1,29 @@
+package org.ricebin.slice;
+
+import java.util.Comparator;
+
+/**
+ * Orders the keys of a table, and picks the short keys a table stores in its index to separate
+ * neighboring data blocks.
+ *
+ * <p>The defaults return the key they are given, which is correct for any order; comparators
+ * that know their encoding override them to shrink the index.
+ */
+// https://github.com/google/leveldb/blob/main/include/leveldb/comparator.h
+public interface SliceComparator<T extends Slice> extends Comparator<T> {
+
+  /**
+   * Returns a key that is >= {@code start} and < {@code limit}, preferably shorter than {@code
+   * start}. Requires {@code start < limit}.
+   */
+  default T findShortestSeparator(T start, T limit) {
+    return start;
+  }
+
+  /**
+   * Returns a key that is >= {@code key}, preferably shorter than it.
+   */
+  default T findShortSuccessor(T key) {
+    return key;
+  }
+}
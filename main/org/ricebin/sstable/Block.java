@@ -9,4 +9,6 @@ interface Block<V> {
   Iterator<Entry<Slice, V>> iterator();
 
   Iterator<Entry<Slice, V>> iterator(Slice lowerBound);
+
+  Cursor<V> cursor();
 }
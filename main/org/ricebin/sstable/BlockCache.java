@@ -0,0 +1,167 @@
+package org.ricebin.sstable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of decoded blocks keyed by (table id, block offset) and bounded by the total
+ * uncompressed size of the cached blocks. The cache is split into independently locked shards so
+ * concurrent readers do not contend on a single lock. A single instance can be shared by many
+ * tables.
+ */
+// https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/util/cache.cc
+public class BlockCache {
+
+  // https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/util/cache.cc#L339
+  static final int DEFAULT_SHARD_BITS = 4;
+
+  private final Shard[] shards;
+  private final int shardBits;
+  private final long capacity;
+  private final AtomicLong lastId = new AtomicLong();
+
+  public BlockCache(long capacity) {
+    this(capacity, DEFAULT_SHARD_BITS);
+  }
+
+  public BlockCache(long capacity, int shardBits) {
+    checkArgument(capacity >= 0);
+    checkArgument(shardBits >= 0 && shardBits < 16);
+    this.capacity = capacity;
+    this.shardBits = shardBits;
+    int numShards = 1 << shardBits;
+    long perShard = (capacity + (numShards - 1)) / numShards;
+    this.shards = new Shard[numShards];
+    for (int i = 0; i < numShards; i++) {
+      shards[i] = new Shard(perShard);
+    }
+  }
+
+  /**
+   * Returns a new id that tables use to partition the shared key space.
+   */
+  long newId() {
+    return lastId.incrementAndGet();
+  }
+
+  @SuppressWarnings("unchecked")
+  <V> PrefixBlock<V> get(long cacheId, long offset) {
+    return (PrefixBlock<V>) shard(cacheId, offset).get(cacheId, offset);
+  }
+
+  void put(long cacheId, long offset, PrefixBlock<?> block, int charge) {
+    shard(cacheId, offset).put(new CacheKey(cacheId, offset), block, charge);
+  }
+
+  public long capacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns the combined charge of all blocks currently in the cache.
+   */
+  public long usage() {
+    long usage = 0;
+    for (Shard shard : shards) {
+      usage += shard.usage();
+    }
+    return usage;
+  }
+
+  private Shard shard(long cacheId, long offset) {
+    if (shardBits == 0) {
+      return shards[0];
+    }
+    long h = (cacheId * 0x9E3779B97F4A7C15L) ^ offset;
+    h *= 0xC2B2AE3D27D4EB4FL;
+    return shards[(int) (h >>> (64 - shardBits))];
+  }
+
+  private static final class CacheKey {
+
+    // mutable only so that Shard can probe without allocating
+    private long cacheId;
+    private long offset;
+
+    private CacheKey(long cacheId, long offset) {
+      this.cacheId = cacheId;
+      this.offset = offset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey that = (CacheKey) o;
+      return cacheId == that.cacheId && offset == that.offset;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(cacheId * 31 + offset);
+    }
+  }
+
+  private static final class Handle {
+
+    private final PrefixBlock<?> block;
+    private final int charge;
+
+    private Handle(PrefixBlock<?> block, int charge) {
+      this.block = block;
+      this.charge = charge;
+    }
+  }
+
+  private static final class Shard {
+
+    private final long capacity;
+
+    // access ordered, eldest entry is the least recently used
+    private final LinkedHashMap<CacheKey, Handle> table = new LinkedHashMap<>(16, 0.75f, true);
+    // reused lookup key, guarded by the shard lock
+    private final CacheKey probe = new CacheKey(0, 0);
+    private long usage = 0;
+
+    private Shard(long capacity) {
+      this.capacity = capacity;
+    }
+
+    synchronized PrefixBlock<?> get(long cacheId, long offset) {
+      probe.cacheId = cacheId;
+      probe.offset = offset;
+      Handle handle = table.get(probe);
+      return handle == null ? null : handle.block;
+    }
+
+    synchronized void put(CacheKey key, PrefixBlock<?> block, int charge) {
+      if (charge > capacity) {
+        // would evict everything else and still not fit
+        return;
+      }
+      Handle old = table.put(key, new Handle(block, charge));
+      if (old != null) {
+        usage -= old.charge;
+      }
+      usage += charge;
+
+      Iterator<Map.Entry<CacheKey, Handle>> lru = table.entrySet().iterator();
+      while (usage > capacity && lru.hasNext()) {
+        usage -= lru.next().getValue().charge;
+        lru.remove();
+      }
+    }
+
+    synchronized long usage() {
+      return usage;
+    }
+  }
+}
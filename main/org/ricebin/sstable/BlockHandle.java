@@ -30,6 +30,14 @@ class BlockHandle {
     return new BlockHandle(offset, size);
   }
 
+  // decodes the handle encoded at data[pos] into scratch without allocating
+  static void decode(Slice data, int pos, LookupScratch scratch) {
+    long offset = SliceUtils.getVarLong(data, pos);
+    pos += SliceUtils.varIntLength(offset);
+    scratch.blockOffset = offset;
+    scratch.blockSize = Ints.checkedCast(SliceUtils.getVarLong(data, pos));
+  }
+
   static Slice encode(BlockHandle value, Slice.Factory factory) {
     Sink sink = factory.newFixedSizeSink(MAX_ENCODED_LENGTH);
     encode(value, sink);
@@ -0,0 +1,91 @@
+package org.ricebin.sstable;
+
+import java.util.Arrays;
+import java.util.List;
+import org.ricebin.slice.Slice;
+
+/**
+ * Optional hash index of a data block that maps a key to the restart run containing it, so a point
+ * lookup can skip the binary search over the restart array.
+ *
+ * <p>The index is one byte per bucket holding a restart index, {@link #EMPTY} or {@link
+ * #COLLISION}, followed by the number of buckets as a 16 bit little endian integer. It is written
+ * in front of the first entry of the block and restart[0] points just past it. Block readers,
+ * including leveldb's, start decoding entries at restart[0] and never look at these bytes, so
+ * blocks with an index stay readable everywhere; plain blocks always have restart[0] == 0.
+ */
+// https://github.com/facebook/rocksdb/blob/main/table/block_based/data_block_hash_index.h
+class BlockHashIndex {
+
+  static final int EMPTY = 255;
+  static final int COLLISION = 254;
+
+  // restart indexes must fit in a bucket without clashing with the markers above
+  static final int MAX_RESTARTS = COLLISION - 1;
+
+  // keys per bucket, rocksdb's default data_block_hash_table_util_ratio
+  private static final double UTIL_RATIO = 0.75;
+  private static final int MAX_BUCKETS = 0xffff;
+
+  private static final int SEED = 0x2a8d7bd5;
+
+  private static final int NUM_BUCKETS_SIZE = 2;
+
+  static int hash(Slice key) {
+    return Hash.hash(key, SEED);
+  }
+
+  static byte[] buildBuckets(List<Integer> keyHashes, List<Integer> keyRestarts) {
+    int numBuckets = (int) Math.min(MAX_BUCKETS, (long) (keyHashes.size() / UTIL_RATIO) + 1);
+    byte[] buckets = new byte[numBuckets];
+    Arrays.fill(buckets, (byte) EMPTY);
+    for (int i = 0; i < keyHashes.size(); i++) {
+      int bucket = bucket(keyHashes.get(i), numBuckets);
+      int restart = keyRestarts.get(i);
+      int current = buckets[bucket] & 0xff;
+      if (current == EMPTY) {
+        buckets[bucket] = (byte) restart;
+      } else if (current != restart) {
+        buckets[bucket] = (byte) COLLISION;
+      }
+    }
+    return buckets;
+  }
+
+  static int encodedLength(int numBuckets) {
+    return numBuckets + NUM_BUCKETS_SIZE;
+  }
+
+  static void encode(byte[] buckets, Slice.Factory.Sink<?> sink) {
+    for (byte bucket : buckets) {
+      sink.putByte(bucket);
+    }
+    sink.putByte((byte) buckets.length);
+    sink.putByte((byte) (buckets.length >>> 8));
+  }
+
+  /**
+   * Returns the number of buckets of the index in front of {@code firstRestart}, or 0 if the block
+   * does not have one.
+   */
+  static int numBuckets(Slice data, int firstRestart) {
+    if (firstRestart < NUM_BUCKETS_SIZE) {
+      return 0;
+    }
+    int numBuckets = data.getUnsignedByte(firstRestart - 2)
+        | (data.getUnsignedByte(firstRestart - 1) << 8);
+    return encodedLength(numBuckets) == firstRestart ? numBuckets : 0;
+  }
+
+  /**
+   * Returns the restart index that may contain {@code key}, {@link #EMPTY} if the key is not in
+   * the block, or {@link #COLLISION} if the restart array has to be searched.
+   */
+  static int lookup(Slice data, int numBuckets, Slice key) {
+    return data.getUnsignedByte(bucket(hash(key), numBuckets));
+  }
+
+  private static int bucket(int hash, int numBuckets) {
+    return (int) (Integer.toUnsignedLong(hash) % numBuckets);
+  }
+}
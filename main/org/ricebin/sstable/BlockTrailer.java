@@ -1,6 +1,8 @@
 package org.ricebin.sstable;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32C;
 import org.ricebin.slice.Slice;
 import org.ricebin.slice.Slice.Factory.Sink;
 import org.ricebin.slice.Slice.Reader;
@@ -11,6 +13,9 @@ class BlockTrailer {
   // https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/table/format.h#L79
   static final int MAX_ENCODED_LENGTH = 5;
 
+  // https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/util/crc32c.h#L24
+  private static final int MASK_DELTA = 0xa282ead8;
+
   private final CompressionType compressionType;
   private final int crc32c;
 
@@ -32,6 +37,37 @@ class BlockTrailer {
     return sink.finish();
   }
 
+  /**
+   * Returns the masked crc32c of the block contents followed by the type byte, as stored in the
+   * trailer.
+   */
+  // https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/table/table_builder.cc#L217
+  static int checksum(ByteBuffer contents, CompressionType type) {
+    CRC32C crc = new CRC32C();
+    crc.update(contents.duplicate());
+    crc.update(type.getValue());
+    return mask((int) crc.getValue());
+  }
+
+  /**
+   * Checks the crc32c in the trailer of the block at the start of {@code dataAndTrailer}.
+   */
+  // https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/table/format.cc#L94
+  static void verifyChecksum(ByteBuffer dataAndTrailer, int blockSize) {
+    // the type byte directly follows the contents, so both are covered in one pass
+    CRC32C crc = new CRC32C();
+    crc.update(dataAndTrailer.duplicate().position(0).limit(blockSize + 1));
+    int expected = dataAndTrailer.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(blockSize + 1);
+    if (mask((int) crc.getValue()) != expected) {
+      throw new IllegalStateException("block checksum mismatch");
+    }
+  }
+
+  // Rotating the crc keeps the crc of a string that embeds crcs from being trivially related.
+  static int mask(int crc) {
+    return ((crc >>> 15) | (crc << 17)) + MASK_DELTA;
+  }
+
   CompressionType getCompressionType() {
     return compressionType;
   }
@@ -0,0 +1,13 @@
+package org.ricebin.sstable;
+
+import java.util.Iterator;
+
+/**
+ * Iterator that holds resources until it is exhausted or closed, such as reads issued ahead of
+ * the entries being consumed. Close it when abandoning the iteration early.
+ */
+public interface CloseableIterator<T> extends Iterator<T>, AutoCloseable {
+
+  @Override
+  void close();
+}
@@ -0,0 +1,46 @@
+package org.ricebin.sstable;
+
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+
+/**
+ * Zstd dictionary shared by all data blocks of a table, trained by {@link TableBuilder} from the
+ * first data blocks and stored raw in a meta block under {@link #META_KEY}.
+ *
+ * <p>Small blocks of similar records compress poorly on their own, since every block has to
+ * spell out the strings the records have in common; with the dictionary they are back
+ * references instead. The native compression and decompression contexts are built once per
+ * table and shared by all threads.
+ */
+// https://github.com/facebook/rocksdb/blob/main/util/compression.h
+final class CompressionDict {
+
+  static final String META_KEY = "compression.dict";
+
+  final byte[] dictionary;
+  private volatile ZstdDictCompress compressContext;
+  private final ZstdDictDecompress decompressContext;
+
+  CompressionDict(byte[] dictionary) {
+    this.dictionary = dictionary;
+    this.decompressContext = new ZstdDictDecompress(dictionary);
+  }
+
+  ZstdDictCompress compressContext() {
+    ZstdDictCompress context = compressContext;
+    if (context == null) {
+      synchronized (this) {
+        context = compressContext;
+        if (context == null) {
+          context = new ZstdDictCompress(dictionary, ZstdCompression.LEVEL);
+          compressContext = context;
+        }
+      }
+    }
+    return context;
+  }
+
+  ZstdDictDecompress decompressContext() {
+    return decompressContext;
+  }
+}
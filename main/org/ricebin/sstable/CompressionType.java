@@ -7,13 +7,58 @@ import java.nio.ByteBuffer;
 public enum CompressionType {
   NONE((byte) 0, new Compressor() {
     @Override
-    public ByteBuffer uncompress(ByteBuffer input) {
+    public ByteBuffer uncompress(ByteBuffer input, CompressionDict dict) {
       return input;
     }
 
     @Override
-    public ByteBuffer compress(ByteBuffer buf) {
-      return buf;
+    public int maxCompressedLength(int length) {
+      return length;
+    }
+
+    @Override
+    public int compress(ByteBuffer input, byte[] output, CompressionDict dict) {
+      int length = input.remaining();
+      input.duplicate().get(output, 0, length);
+      return length;
+    }
+  }),
+  SNAPPY((byte) 1, new Compressor() {
+    @Override
+    public ByteBuffer uncompress(ByteBuffer input, CompressionDict dict) {
+      return Snappy.uncompress(input);
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+      return Snappy.maxCompressedLength(length);
+    }
+
+    @Override
+    public int compress(ByteBuffer input, byte[] output, CompressionDict dict) {
+      if (input.hasArray()) {
+        return Snappy.compress(
+            input.array(), input.arrayOffset() + input.position(), input.remaining(), output);
+      }
+      byte[] copy = new byte[input.remaining()];
+      input.duplicate().get(copy);
+      return Snappy.compress(copy, 0, copy.length, output);
+    }
+  }),
+  ZSTD((byte) 2, new Compressor() {
+    @Override
+    public ByteBuffer uncompress(ByteBuffer input, CompressionDict dict) {
+      return ZstdCompression.uncompress(input, dict);
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+      return ZstdCompression.maxCompressedLength(length);
+    }
+
+    @Override
+    public int compress(ByteBuffer input, byte[] output, CompressionDict dict) {
+      return ZstdCompression.compress(input, output, dict);
     }
   });
 
@@ -28,6 +73,10 @@ public enum CompressionType {
   public static CompressionType decode(byte value) {
     if (value == 0) {
       return NONE;
+    } else if (value == 1) {
+      return SNAPPY;
+    } else if (value == 2) {
+      return ZSTD;
     } else {
       throw new IllegalArgumentException("unsupported compression: " + value);
     }
@@ -4,7 +4,14 @@ import java.nio.ByteBuffer;
 
 interface Compressor {
 
-  ByteBuffer uncompress(ByteBuffer input);
+  // dict is the table's compression dictionary, or null; codecs without dictionaries ignore it
+  ByteBuffer uncompress(ByteBuffer input, CompressionDict dict);
 
-  ByteBuffer compress(ByteBuffer buf);
+  int maxCompressedLength(int length);
+
+  /**
+   * Compresses the remaining bytes of {@code input} into {@code output}, which must hold at least
+   * {@link #maxCompressedLength} bytes, and returns the compressed length.
+   */
+  int compress(ByteBuffer input, byte[] output, CompressionDict dict);
 }
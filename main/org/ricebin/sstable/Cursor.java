@@ -0,0 +1,44 @@
+package org.ricebin.sstable;
+
+import org.ricebin.slice.Slice;
+
+/**
+ * Positional iterator over sorted entries. Unlike {@link java.util.Iterator} nothing is
+ * materialized while moving: {@link #key()} and {@link #value()} only build the key slice and
+ * decode the value of the current entry when they are called, so scans and seeks that look at
+ * keys alone never pay for values.
+ *
+ * <p>The slice returned by {@link #key()} may share a buffer with the cursor and is only valid
+ * until the cursor moves.
+ */
+// https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/include/leveldb/iterator.h
+public interface Cursor<V> {
+
+  /**
+   * Returns true if the cursor is positioned at an entry.
+   */
+  boolean isValid();
+
+  void seekToFirst();
+
+  void seekToLast();
+
+  /**
+   * Positions the cursor at the first entry with a key >= target.
+   */
+  void seek(Slice target);
+
+  /**
+   * Moves to the next entry. Requires {@link #isValid()}.
+   */
+  void next();
+
+  /**
+   * Moves to the previous entry. Requires {@link #isValid()}.
+   */
+  void prev();
+
+  Slice key();
+
+  V value();
+}
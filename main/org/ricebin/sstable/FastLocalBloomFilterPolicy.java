@@ -0,0 +1,168 @@
+package org.ricebin.sstable;
+
+import java.util.Collection;
+import org.ricebin.slice.Slice;
+
+/**
+ * Cache local Bloom filter: every key sets and probes bits of a single 64 byte cache line, so a
+ * lookup costs at most one cache miss however many probes it makes. The cache line is chosen with
+ * a multiply-shift instead of a modulo, and each probe takes the next 9 bits of a multiplied
+ * hash as its bit position within the line.
+ *
+ * <p>Confining probes to one line costs a slightly higher false positive rate than {@link
+ * BloomFilterPolicy} at the same bits per key, which is offset by picking the number of probes
+ * for the blocked layout. The format is not readable by leveldb, hence the separate name.
+ *
+ * <p>Format: the cache lines, followed by one byte holding the number of probes.
+ */
+// https://github.com/facebook/rocksdb/blob/main/util/bloom_impl.h#L115
+public class FastLocalBloomFilterPolicy implements FilterPolicy {
+
+  public static final FastLocalBloomFilterPolicy FAST_LOCAL_BLOOM_FILTER =
+      new FastLocalBloomFilterPolicy("ricebin.FastLocalBloomFilter", 0xbc9f1d34);
+
+  static final int CACHE_LINE_SIZE = 64;
+  private static final int CACHE_LINE_BITS = CACHE_LINE_SIZE * 8;
+  // log2(CACHE_LINE_BITS), bits of the hash consumed by every probe
+  private static final int BITS_PER_PROBE = 9;
+
+  private static final int GOLDEN_RATIO = 0x9e3779b9;
+
+  private class ReaderImpl implements Reader {
+
+    @Override
+    public String name() {
+      return name;
+    }
+
+    @Override
+    public boolean keyMayMatch(Slice key, Slice filter) {
+      int len = filter.len();
+      int numLines = (len - 1) / CACHE_LINE_SIZE;
+      if (numLines == 0) {
+        return false;
+      }
+      int k = filter.getByte(len - 1);
+      if (k < 1 || k > 30) {
+        // Reserved for new encodings, consider it a match.
+        return true;
+      }
+
+      int h1 = Hash.hash(key, seed);
+      int lineOffset = line(h1, numLines) * CACHE_LINE_SIZE;
+      int h2 = remix(h1);
+      for (int j = 0; j < k; j++) {
+        int bitpos = h2 >>> (32 - BITS_PER_PROBE);
+        if ((filter.getByte(lineOffset + (bitpos >>> 3)) & (1 << (bitpos & 7))) == 0) {
+          return false;
+        }
+        h2 *= GOLDEN_RATIO;
+      }
+      return true;
+    }
+  }
+
+  private class WriterImpl implements Writer {
+
+    private final int bitsPerKey;
+    private final int k;
+
+    private WriterImpl(int bitsPerKey) {
+      this.bitsPerKey = bitsPerKey;
+      this.k = chooseNumProbes(bitsPerKey * 1000);
+    }
+
+    @Override
+    public String name() {
+      return name;
+    }
+
+    @Override
+    public byte[] createFilter(Collection<Slice> keys) {
+      long bits = (long) keys.size() * bitsPerKey;
+      int numLines = (int) ((bits + CACHE_LINE_BITS - 1) / CACHE_LINE_BITS);
+      if (!keys.isEmpty() && numLines == 0) {
+        numLines = 1;
+      }
+
+      byte[] array = new byte[numLines * CACHE_LINE_SIZE + 1];
+      array[array.length - 1] = (byte) k; // Remember # of probes in filter
+
+      for (Slice key : keys) {
+        int h1 = Hash.hash(key, seed);
+        int lineOffset = line(h1, numLines) * CACHE_LINE_SIZE;
+        int h2 = remix(h1);
+        for (int j = 0; j < k; j++) {
+          int bitpos = h2 >>> (32 - BITS_PER_PROBE);
+          array[lineOffset + (bitpos >>> 3)] |= (1 << (bitpos & 7));
+          h2 *= GOLDEN_RATIO;
+        }
+      }
+      return array;
+    }
+  }
+
+  // https://github.com/facebook/rocksdb/blob/main/util/bloom_impl.h#L147
+  static int chooseNumProbes(int millibitsPerKey) {
+    // All probes hit the same cache line, so extra probes are cheap; these are the most accurate
+    // choices measured for the blocked layout.
+    if (millibitsPerKey <= 2080) {
+      return 1;
+    } else if (millibitsPerKey <= 3580) {
+      return 2;
+    } else if (millibitsPerKey <= 5100) {
+      return 3;
+    } else if (millibitsPerKey <= 6640) {
+      return 4;
+    } else if (millibitsPerKey <= 8300) {
+      return 5;
+    } else if (millibitsPerKey <= 10070) {
+      return 6;
+    } else if (millibitsPerKey <= 11720) {
+      return 7;
+    } else if (millibitsPerKey <= 14001) {
+      return 8;
+    } else if (millibitsPerKey <= 16050) {
+      return 9;
+    } else if (millibitsPerKey <= 18300) {
+      return 10;
+    } else if (millibitsPerKey <= 22001) {
+      return 11;
+    } else if (millibitsPerKey <= 25501) {
+      return 12;
+    } else if (millibitsPerKey > 50000) {
+      // Top out at 24 probes (three sets of 8)
+      return 24;
+    } else {
+      // Roughly optimal choices for remaining range
+      return (millibitsPerKey - 1) / 2000 - 1;
+    }
+  }
+
+  // multiply-shift range reduction, maps the hash onto [0, numLines) without a division
+  private static int line(int h, int numLines) {
+    return (int) (((h & 0xffffffffL) * numLines) >>> 32);
+  }
+
+  // the line is picked from the high bits of h * numLines, so take the probe bits from a
+  // different mix of the hash
+  private static int remix(int h) {
+    return (int) (((h & 0xffffffffL) * 0x9E3779B97F4A7C15L) >>> 32) | 1;
+  }
+
+  private final String name;
+  private final int seed;
+
+  private FastLocalBloomFilterPolicy(String name, int seed) {
+    this.name = name;
+    this.seed = seed;
+  }
+
+  public Reader getReader() {
+    return new ReaderImpl();
+  }
+
+  public Writer getWriter(int bitsPerKey) {
+    return new WriterImpl(bitsPerKey);
+  }
+}
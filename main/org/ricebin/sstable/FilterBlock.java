@@ -36,6 +36,33 @@ class FilterBlock {
     return true;  // Errors are treated as potential matches
   }
 
+  /**
+   * Probes {@code keys[from, to)} against the filter of the data block at {@code blockOffset},
+   * locating that filter only once. Clears {@code matches[i]} for every key that is definitely
+   * not in the block.
+   */
+  void mayExist(long blockOffset, Slice[] keys, int from, int to, boolean[] matches) {
+    long index = blockOffset >> baseLg;
+    if (index >= num) {
+      return;  // Errors are treated as potential matches
+    }
+    int start = offsets.getInt((int) (index * 4));
+    int limit = offsets.getInt((int) (index * 4 + 4));
+    if (start == limit) {
+      // Empty filters do not match any keys
+      for (int i = from; i < to; i++) {
+        matches[i] = false;
+      }
+      return;
+    }
+    Slice filterSlice = blockContent.slice(start, limit - start);
+    for (int i = from; i < to; i++) {
+      if (!filterPolicy.keyMayMatch(keys[i], filterSlice)) {
+        matches[i] = false;
+      }
+    }
+  }
+
   static FilterBlock newInstance(Slice contents, FilterPolicy.Reader filterPolicy) {
     int size = contents.len();
     if (size < 5) {
@@ -0,0 +1,89 @@
+package org.ricebin.sstable;
+
+import java.util.Arrays;
+import org.ricebin.slice.Slice;
+
+/**
+ * Builds the filter block of a table: one filter for every 2KB range of data block offsets, each
+ * covering the keys of the data blocks that start in that range.
+ *
+ * <p>Only the keys of the current range are kept, in a single flat buffer, and they are dropped
+ * as soon as their filter has been generated.
+ */
+// https://github.com/google/leveldb/blob/master/table/filter_block.cc
+class FilterBlockBuilder {
+
+  // Generate new filter every 2KB of data
+  static final int FILTER_BASE_LG = 11;
+  static final long FILTER_BASE = 1L << FILTER_BASE_LG;
+
+  private final Slice.Factory sliceFactory;
+  private final FilterPolicy.Writer policy;
+
+  private final KeyBuffer keys;
+
+  // Filter data computed so far
+  private byte[] result = new byte[1024];
+  private int resultLen = 0;
+  // Filter offset in result of each filter
+  private int[] filterOffsets = new int[64];
+  private int numFilters = 0;
+
+  FilterBlockBuilder(Slice.Factory sliceFactory, FilterPolicy.Writer policy) {
+    this.sliceFactory = sliceFactory;
+    this.policy = policy;
+    this.keys = new KeyBuffer(sliceFactory);
+  }
+
+  String name() {
+    return policy.name();
+  }
+
+  void startBlock(long blockOffset) {
+    long filterIndex = blockOffset / FILTER_BASE;
+    while (filterIndex > numFilters) {
+      generateFilter();
+    }
+  }
+
+  void addKey(Slice key) {
+    keys.add(key);
+  }
+
+  Slice finish() {
+    if (keys.size() > 0) {
+      generateFilter();
+    }
+
+    // Append array of per-filter offsets, the offset of that array and the base
+    Slice.Factory.Sink<?> sink =
+        sliceFactory.newFixedSizeSink(resultLen + (numFilters + 1) * Slice.SIZE_OF_INT + 1);
+    sink.putSlice(sliceFactory.wrap(result, 0, resultLen));
+    for (int i = 0; i < numFilters; i++) {
+      sink.putInt(filterOffsets[i]);
+    }
+    sink.putInt(resultLen);
+    sink.putByte((byte) FILTER_BASE_LG);
+    return sink.finish();
+  }
+
+  private void generateFilter() {
+    if (numFilters == filterOffsets.length) {
+      filterOffsets = Arrays.copyOf(filterOffsets, numFilters * 2);
+    }
+    filterOffsets[numFilters++] = resultLen;
+    if (keys.size() == 0) {
+      // Fast path if there are no keys for this filter
+      return;
+    }
+
+    byte[] filter = policy.createFilter(keys.keys());
+    if (resultLen + filter.length > result.length) {
+      result = Arrays.copyOf(result, Math.max(result.length * 2, resultLen + filter.length));
+    }
+    System.arraycopy(filter, 0, result, resultLen, filter.length);
+    resultLen += filter.length;
+
+    keys.clear();
+  }
+}
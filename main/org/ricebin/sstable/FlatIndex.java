@@ -0,0 +1,194 @@
+package org.ricebin.sstable;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.collect.AbstractIterator;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import org.ricebin.slice.Slice;
+
+/**
+ * Index decoded once into primitive arrays: the keys back to back in one byte array, and the
+ * key offsets, block offsets and block sizes in parallel arrays. A seek is a binary search over
+ * the arrays that neither parses varints nor allocates.
+ *
+ * <p>Every entry of a two level index is loaded up front, so this trades {@link #memoryUsage()}
+ * bytes per table for lookups that never touch an index block again.
+ */
+class FlatIndex implements Index {
+
+  private final Slice.Factory sliceFactory;
+  private final Comparator<Slice> comparator;
+  // keys are compared in place unless the table has another order than bytewise
+  private final boolean bytewise;
+
+  private final byte[] keys;
+  // key i is keys[keyOffsets[i], keyOffsets[i + 1])
+  private final int[] keyOffsets;
+  private final long[] blockOffsets;
+  private final int[] blockSizes;
+  private final int size;
+
+  FlatIndex(Slice.Factory sliceFactory, Iterator<Entry<Slice, BlockHandle>> entries) {
+    this.sliceFactory = sliceFactory;
+    this.comparator = sliceFactory.comparator();
+    this.bytewise = SliceUtils.isBytewise(comparator);
+
+    byte[] keys = new byte[1024];
+    int[] keyOffsets = new int[65];
+    long[] blockOffsets = new long[64];
+    int[] blockSizes = new int[64];
+    int size = 0;
+    int keysLen = 0;
+    while (entries.hasNext()) {
+      Entry<Slice, BlockHandle> entry = entries.next();
+      Slice key = entry.getKey();
+      if (size == blockOffsets.length) {
+        keyOffsets = Arrays.copyOf(keyOffsets, size * 2 + 1);
+        blockOffsets = Arrays.copyOf(blockOffsets, size * 2);
+        blockSizes = Arrays.copyOf(blockSizes, size * 2);
+      }
+      if (keysLen + key.len() > keys.length) {
+        keys = Arrays.copyOf(keys, Math.max(keys.length * 2, keysLen + key.len()));
+      }
+      // the iterator reuses its key buffer, so copy out before advancing
+      for (int i = 0; i < key.len(); i++) {
+        keys[keysLen + i] = key.getByte(i);
+      }
+      keysLen += key.len();
+      keyOffsets[size + 1] = keysLen;
+      blockOffsets[size] = entry.getValue().getOffset();
+      blockSizes[size] = entry.getValue().getSize();
+      size++;
+    }
+
+    this.keys = Arrays.copyOf(keys, keysLen);
+    this.keyOffsets = Arrays.copyOf(keyOffsets, size + 1);
+    this.blockOffsets = Arrays.copyOf(blockOffsets, size);
+    this.blockSizes = Arrays.copyOf(blockSizes, size);
+    this.size = size;
+  }
+
+  /**
+   * Returns the number of bytes held by the decoded arrays.
+   */
+  @Override
+  public long memoryUsage() {
+    return keys.length
+        + (long) keyOffsets.length * Integer.BYTES
+        + (long) blockOffsets.length * Long.BYTES
+        + (long) blockSizes.length * Integer.BYTES;
+  }
+
+  @Override
+  public boolean seek(Slice key, LookupScratch scratch) {
+    int i = lowerBound(key);
+    if (i == size) {
+      return false;
+    }
+    scratch.blockOffset = blockOffsets[i];
+    scratch.blockSize = blockSizes[i];
+    return true;
+  }
+
+  @Override
+  public Iterator<Entry<Slice, BlockHandle>> iterator() {
+    return iterator(0);
+  }
+
+  @Override
+  public Iterator<Entry<Slice, BlockHandle>> iterator(Slice lowerBound) {
+    return iterator(lowerBound(lowerBound));
+  }
+
+  private Iterator<Entry<Slice, BlockHandle>> iterator(int start) {
+    return new AbstractIterator<Entry<Slice, BlockHandle>>() {
+      private int next = start;
+
+      @Override
+      protected Entry<Slice, BlockHandle> computeNext() {
+        if (next == size) {
+          return endOfData();
+        }
+        int i = next++;
+        Slice key = sliceFactory.wrap(keys, keyOffsets[i], keyOffsets[i + 1] - keyOffsets[i]);
+        return new SimpleImmutableEntry<>(key, new BlockHandle(blockOffsets[i], blockSizes[i]));
+      }
+    };
+  }
+
+  @Override
+  public Cursor<BlockHandle> cursor() {
+    return new Cursor<BlockHandle>() {
+      private int current = size;
+
+      @Override
+      public boolean isValid() {
+        return current >= 0 && current < size;
+      }
+
+      @Override
+      public void seekToFirst() {
+        current = 0;
+      }
+
+      @Override
+      public void seekToLast() {
+        current = size - 1;
+      }
+
+      @Override
+      public void seek(Slice target) {
+        current = lowerBound(target);
+      }
+
+      @Override
+      public void next() {
+        checkState(isValid());
+        current++;
+      }
+
+      @Override
+      public void prev() {
+        checkState(isValid());
+        current--;
+      }
+
+      @Override
+      public Slice key() {
+        checkState(isValid());
+        return sliceFactory.wrap(
+            keys, keyOffsets[current], keyOffsets[current + 1] - keyOffsets[current]);
+      }
+
+      @Override
+      public BlockHandle value() {
+        checkState(isValid());
+        return new BlockHandle(blockOffsets[current], blockSizes[current]);
+      }
+    };
+  }
+
+  // index of the first key >= target, or size if there is none
+  private int lowerBound(Slice target) {
+    int left = 0;
+    int right = size;
+    while (left < right) {
+      int mid = (left + right) >>> 1;
+      int offset = keyOffsets[mid];
+      int len = keyOffsets[mid + 1] - offset;
+      int cmp = bytewise
+          ? SliceUtils.compare(keys, offset, len, target)
+          : comparator.compare(sliceFactory.wrap(keys, offset, len), target);
+      if (cmp < 0) {
+        left = mid + 1;
+      } else {
+        right = mid;
+      }
+    }
+    return left;
+  }
+}
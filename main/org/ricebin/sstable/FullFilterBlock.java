@@ -0,0 +1,39 @@
+package org.ricebin.sstable;
+
+import org.ricebin.slice.Slice;
+
+/**
+ * A single filter over all keys of a table, stored under {@link #META_PREFIX} + policy name in
+ * the metaindex. Unlike {@link FilterBlock} it does not depend on the data block of a key, so
+ * absent keys are rejected before the index is searched, and one large filter has a lower false
+ * positive rate per bit than many small ones.
+ */
+// https://github.com/facebook/rocksdb/blob/main/table/block_based/full_filter_block.h
+class FullFilterBlock {
+
+  static final String META_PREFIX = "fullfilter.";
+
+  final Slice filter;
+  private final FilterPolicy.Reader filterPolicy;
+
+  FullFilterBlock(Slice filter, FilterPolicy.Reader filterPolicy) {
+    this.filter = filter;
+    this.filterPolicy = filterPolicy;
+  }
+
+  boolean mayExist(Slice key) {
+    return filterPolicy.keyMayMatch(key, filter);
+  }
+
+  /**
+   * Clears {@code matches[i]} for every key of {@code keys[from, to)} that is definitely not in
+   * the table.
+   */
+  void mayExist(Slice[] keys, int from, int to, boolean[] matches) {
+    for (int i = from; i < to; i++) {
+      if (matches[i] && !filterPolicy.keyMayMatch(keys[i], filter)) {
+        matches[i] = false;
+      }
+    }
+  }
+}
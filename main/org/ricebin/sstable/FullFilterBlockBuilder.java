@@ -0,0 +1,35 @@
+package org.ricebin.sstable;
+
+import org.ricebin.slice.Slice;
+
+/**
+ * Builds a {@link FullFilterBlock}. The filter can only be created once all keys are known, so
+ * the keys of the whole table are buffered until {@link #finish}.
+ */
+// https://github.com/facebook/rocksdb/blob/main/table/block_based/full_filter_block.cc
+class FullFilterBlockBuilder {
+
+  private final Slice.Factory sliceFactory;
+  private final FilterPolicy.Writer policy;
+  private final KeyBuffer keys;
+
+  FullFilterBlockBuilder(Slice.Factory sliceFactory, FilterPolicy.Writer policy) {
+    this.sliceFactory = sliceFactory;
+    this.policy = policy;
+    this.keys = new KeyBuffer(sliceFactory);
+  }
+
+  String name() {
+    return policy.name();
+  }
+
+  void addKey(Slice key) {
+    keys.add(key);
+  }
+
+  Slice finish() {
+    byte[] filter = policy.createFilter(keys.keys());
+    keys.clear();
+    return sliceFactory.wrap(filter, 0, filter.length);
+  }
+}
@@ -1,7 +1,6 @@
 package org.ricebin.sstable;
 
 import org.ricebin.slice.Slice;
-import org.ricebin.slice.Slice.Reader;
 
 // https://github.com/google/leveldb/blob/master/util/hash.cc
 class Hash {
@@ -14,12 +13,14 @@ class Hash {
 
     int h = seed ^ (len * m);
 
-    Reader reader = slice.newReader();
-
     int idx = 0;
     // Pick up four bytes at a time
     for (; idx + 4 <= len; idx += 4) {
-      int w = reader.getInt();
+      // little endian, independent of the byte order of the underlying buffer
+      int w = slice.getUnsignedByte(idx)
+          | (slice.getUnsignedByte(idx + 1) << 8)
+          | (slice.getUnsignedByte(idx + 2) << 16)
+          | (slice.getUnsignedByte(idx + 3) << 24);
       h += w;
       h *= m;
       h ^= (h >>> 16);
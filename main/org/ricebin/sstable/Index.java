@@ -0,0 +1,25 @@
+package org.ricebin.sstable;
+
+import java.io.IOException;
+import org.ricebin.slice.Slice;
+
+/**
+ * Maps keys to the handles of the data blocks that may contain them. Every index key is >= all
+ * keys in its data block and < all keys in the next one.
+ */
+// https://github.com/facebook/rocksdb/blob/main/table/block_based/index_reader_common.h
+interface Index extends Block<BlockHandle> {
+
+  /**
+   * Stores the handle of the first data block whose index key is >= key in {@code
+   * scratch.blockOffset} and {@code scratch.blockSize}. Returns false if key is past the last
+   * block. Implementations must not allocate when the index is already in memory.
+   */
+  boolean seek(Slice key, LookupScratch scratch) throws IOException;
+
+  /**
+   * Returns the number of bytes this index keeps in memory, not counting blocks held by the block
+   * cache.
+   */
+  long memoryUsage();
+}
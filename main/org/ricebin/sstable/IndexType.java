@@ -0,0 +1,32 @@
+package org.ricebin.sstable;
+
+// https://github.com/facebook/rocksdb/blob/main/include/rocksdb/table.h
+public enum IndexType {
+  // A single index block that is loaded when the table is opened.
+  BINARY_SEARCH((byte) 0),
+
+  // A small top level index over index partitions that are loaded on demand.
+  TWO_LEVEL_INDEX_SEARCH((byte) 2);
+
+  // name of the metaindex entry recording the index type, absent for BINARY_SEARCH
+  static final String META_KEY = "index.type";
+
+  private final byte value;
+
+  IndexType(byte value) {
+    this.value = value;
+  }
+
+  static IndexType decode(byte value) {
+    for (IndexType type : values()) {
+      if (type.value == value) {
+        return type;
+      }
+    }
+    throw new IllegalArgumentException("unsupported index type: " + value);
+  }
+
+  byte getValue() {
+    return value;
+  }
+}
@@ -0,0 +1,84 @@
+package org.ricebin.sstable;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import org.ricebin.slice.Slice;
+
+/**
+ * Copies of keys in a single flat array, the way leveldb's FilterBlockBuilder buffers the keys of
+ * a filter in one string instead of one allocation per key.
+ *
+ * <p>The keys are limited to {@link #MAX_CAPACITY} bytes in total, the largest array the jvm can
+ * allocate. Adding past it throws {@link IllegalStateException}.
+ */
+class KeyBuffer {
+
+  // Some jvms reserve header words in an array
+  static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+  private final Slice.Factory sliceFactory;
+
+  // Flattened key contents
+  private byte[] keys = new byte[1024];
+  private int keysLen = 0;
+  // Starting index in keys of each key
+  private int[] start = new int[64];
+  private int numKeys = 0;
+
+  KeyBuffer(Slice.Factory sliceFactory) {
+    this.sliceFactory = sliceFactory;
+  }
+
+  void add(Slice key) {
+    int len = key.len();
+    if (numKeys == start.length) {
+      start = Arrays.copyOf(start, newCapacity(start.length, numKeys + 1L));
+    }
+    if (len > keys.length - keysLen) {
+      keys = Arrays.copyOf(keys, newCapacity(keys.length, (long) keysLen + len));
+    }
+    start[numKeys++] = keysLen;
+    key.newReader().getBytes(keys, keysLen, len);
+    keysLen += len;
+  }
+
+  /**
+   * Returns the capacity to grow an array of {@code capacity} to, so that it holds at least
+   * {@code minCapacity}. Doubles up to {@link #MAX_CAPACITY} so that adding keys stays linear.
+   */
+  static int newCapacity(int capacity, long minCapacity) {
+    if (minCapacity > MAX_CAPACITY) {
+      throw new IllegalStateException(
+          "keys of a filter exceed " + MAX_CAPACITY + " bytes: " + minCapacity);
+    }
+    return (int) Math.min(Math.max(2L * capacity, minCapacity), MAX_CAPACITY);
+  }
+
+  int size() {
+    return numKeys;
+  }
+
+  /**
+   * Returns views of the buffered keys, only valid until the next {@link #clear}.
+   */
+  List<Slice> keys() {
+    return new AbstractList<Slice>() {
+      @Override
+      public Slice get(int i) {
+        int limit = i + 1 < numKeys ? start[i + 1] : keysLen;
+        return sliceFactory.wrap(keys, start[i], limit - start[i]);
+      }
+
+      @Override
+      public int size() {
+        return numKeys;
+      }
+    };
+  }
+
+  void clear() {
+    keysLen = 0;
+    numKeys = 0;
+  }
+}
@@ -0,0 +1,67 @@
+package org.ricebin.sstable;
+
+import org.ricebin.slice.Slice;
+
+/**
+ * Caller owned state for {@link Table#get(Slice, LookupScratch)}. Reusing one instance across
+ * lookups keeps the point lookup path free of allocations. Not thread safe; use one instance per
+ * thread.
+ */
+public final class LookupScratch {
+
+  // key of the entry the last seek stopped at
+  byte[] key = new byte[128];
+  int keyLen;
+
+  // block holding that entry and the location of its value
+  Slice block;
+  int valueOffset;
+  int valueLen;
+
+  // data block handle decoded from the index entry
+  long blockOffset;
+  int blockSize;
+
+  public LookupScratch() {
+  }
+
+  // this is similar to cpp string.resize()
+  void resizeKeyIfNecessary(int targetCapacity) {
+    if (targetCapacity <= key.length) {
+      return;
+    }
+    int newSize = key.length;
+    while (newSize < targetCapacity) {
+      newSize <<= 1;
+      if (newSize <= 0) {
+        throw new IllegalStateException();
+      }
+    }
+    byte[] newKey = new byte[newSize];
+    System.arraycopy(key, 0, newKey, 0, keyLen);
+    key = newKey;
+  }
+
+  /**
+   * Length of the value found by the last successful lookup.
+   */
+  public int valueLength() {
+    return valueLen;
+  }
+
+  /**
+   * Returns a view of the value found by the last successful lookup.
+   */
+  public Slice value() {
+    return block.slice(valueOffset, valueLen);
+  }
+
+  /**
+   * Copies the value found by the last successful lookup into {@code sink}.
+   */
+  public void copyValue(byte[] sink, int sinkOffset) {
+    for (int i = 0; i < valueLen; i++) {
+      sink[sinkOffset + i] = block.getByte(valueOffset + i);
+    }
+  }
+}
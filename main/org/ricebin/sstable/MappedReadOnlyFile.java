@@ -0,0 +1,87 @@
+package org.ricebin.sstable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * {@link ReadOnlyFile} backed by a read only memory mapping of the whole file.
+ *
+ * <p>A single {@link MappedByteBuffer} cannot address more than 2GB, so the file is mapped as a
+ * sequence of fixed size chunks. Reads that fall inside one chunk are returned as views into the
+ * mapping without copying; the rare read that straddles two chunks is copied into a heap buffer.
+ *
+ * <p>The mapping is released when the returned buffers become unreachable, not on {@link
+ * #close()}, so slices handed out by a table stay valid after the table is closed.
+ */
+class MappedReadOnlyFile implements ReadOnlyFile {
+
+  // 1GB, so that chunk offsets always fit in an int
+  static final int DEFAULT_CHUNK_BITS = 30;
+
+  private final FileChannel fileChannel;
+  private final long size;
+  private final int chunkBits;
+  private final long chunkMask;
+  private final MappedByteBuffer[] chunks;
+
+  MappedReadOnlyFile(FileChannel fileChannel) throws IOException {
+    this(fileChannel, DEFAULT_CHUNK_BITS);
+  }
+
+  MappedReadOnlyFile(FileChannel fileChannel, int chunkBits) throws IOException {
+    checkArgument(chunkBits > 0 && chunkBits <= DEFAULT_CHUNK_BITS);
+    this.fileChannel = fileChannel;
+    this.size = fileChannel.size();
+    this.chunkBits = chunkBits;
+    this.chunkMask = (1L << chunkBits) - 1;
+
+    long chunkSize = 1L << chunkBits;
+    int numChunks = (int) ((size + chunkMask) >>> chunkBits);
+    this.chunks = new MappedByteBuffer[numChunks];
+    for (int i = 0; i < numChunks; i++) {
+      long pos = i * chunkSize;
+      chunks[i] = fileChannel.map(MapMode.READ_ONLY, pos, Math.min(chunkSize, size - pos));
+    }
+  }
+
+  @Override
+  public ByteBuffer readFully(long pos, int len) throws IOException {
+    if (pos < 0 || len < 0 || pos + len > size) {
+      throw new IllegalStateException("unable to read all bytes");
+    }
+
+    int chunk = (int) (pos >>> chunkBits);
+    int offset = (int) (pos & chunkMask);
+    if (offset + len <= chunks[chunk].capacity()) {
+      return SliceUtils.slice(chunks[chunk], offset, len);
+    }
+
+    // straddles a chunk boundary
+    ByteBuffer buf = ByteBuffer.allocate(len).order(ByteOrder.LITTLE_ENDIAN);
+    while (buf.hasRemaining()) {
+      ByteBuffer src = chunks[chunk];
+      int n = Math.min(buf.remaining(), src.capacity() - offset);
+      buf.put(SliceUtils.slice(src, offset, n));
+      chunk++;
+      offset = 0;
+    }
+    buf.flip();
+    return buf;
+  }
+
+  @Override
+  public void close() throws IOException {
+    fileChannel.close();
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+}
@@ -0,0 +1,163 @@
+package org.ricebin.sstable;
+
+// https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/include/leveldb/options.h
+public class Options {
+
+  // If non-null, use the specified cache for blocks.
+  // If null, blocks are read from the file on every access.
+  private BlockCache blockCache = null;
+
+  // Layout of the index written by TableBuilder. Readers detect the layout from the table.
+  private IndexType indexType = IndexType.BINARY_SEARCH;
+
+  // If true, TableBuilder appends a hash index to every data block so point lookups can find the
+  // restart run of a key without a binary search. Tables stay readable by leveldb.
+  private boolean dataBlockHashIndex = false;
+
+  // If true, Table.open decodes the whole index into flat arrays, trading memory for lookups
+  // that do not parse index blocks. See Table.indexMemoryUsage().
+  private boolean flatIndex = false;
+
+  // If non-null, TableBuilder writes a filter block created by this policy. Open the table with
+  // the matching FilterPolicy.Reader to skip data block reads for absent keys.
+  private FilterPolicy.Writer filterPolicy = null;
+
+  // If true, the filter policy creates one filter over all keys of the table instead of one per
+  // 2KB of data blocks, so Table can reject absent keys before searching the index. The builder
+  // then keeps every key in memory until the table is finished, at most 2GB of keys.
+  private boolean fullFilter = false;
+
+  // If non-null, TableBuilder also adds the prefixes of keys to the filter, and Table uses it to
+  // answer prefixIterator for tables written with an extractor of the same name.
+  private PrefixExtractor prefixExtractor = null;
+
+  // If > 0 and the table is compressed with CompressionType.ZSTD, TableBuilder holds back the
+  // first data blocks, about 100 times this many bytes, trains a dictionary of at most this size
+  // on them and compresses all data blocks with it. The dictionary is stored in the table.
+  private int maxDictBytes = 0;
+
+  // If true, Table checks the crc32c of every block it reads from the file and fails the read
+  // on a mismatch. Blocks served from the block cache were checked when they were read, so hot
+  // blocks are not checksummed again.
+  private boolean verifyChecksums = false;
+
+  // If > 1, TableBuilder compresses and checksums data blocks on this many threads while the
+  // caller keeps adding keys, and a separate thread writes them to the file in order. The table
+  // is the same as one built on the caller's thread.
+  private int parallelCompression = 1;
+
+  // Size of the buffer TableBuilder collects blocks in before writing them to the file.
+  private int writeBufferSize = 1 << 20;
+
+  // If > 0, TableBuilder forces the written part of the table to the device every this many
+  // bytes instead of leaving all of it to the caller's sync once the table is finished.
+  private long bytesPerSync = 0;
+
+  public Options blockCache(BlockCache blockCache) {
+    this.blockCache = blockCache;
+    return this;
+  }
+
+  public Options indexType(IndexType indexType) {
+    this.indexType = indexType;
+    return this;
+  }
+
+  public Options dataBlockHashIndex(boolean dataBlockHashIndex) {
+    this.dataBlockHashIndex = dataBlockHashIndex;
+    return this;
+  }
+
+  public Options flatIndex(boolean flatIndex) {
+    this.flatIndex = flatIndex;
+    return this;
+  }
+
+  public Options filterPolicy(FilterPolicy.Writer filterPolicy) {
+    this.filterPolicy = filterPolicy;
+    return this;
+  }
+
+  public Options fullFilter(boolean fullFilter) {
+    this.fullFilter = fullFilter;
+    return this;
+  }
+
+  public Options prefixExtractor(PrefixExtractor prefixExtractor) {
+    this.prefixExtractor = prefixExtractor;
+    return this;
+  }
+
+  public Options maxDictBytes(int maxDictBytes) {
+    this.maxDictBytes = maxDictBytes;
+    return this;
+  }
+
+  public Options verifyChecksums(boolean verifyChecksums) {
+    this.verifyChecksums = verifyChecksums;
+    return this;
+  }
+
+  public Options parallelCompression(int parallelCompression) {
+    this.parallelCompression = parallelCompression;
+    return this;
+  }
+
+  public Options writeBufferSize(int writeBufferSize) {
+    this.writeBufferSize = writeBufferSize;
+    return this;
+  }
+
+  public Options bytesPerSync(long bytesPerSync) {
+    this.bytesPerSync = bytesPerSync;
+    return this;
+  }
+
+  BlockCache getBlockCache() {
+    return blockCache;
+  }
+
+  IndexType getIndexType() {
+    return indexType;
+  }
+
+  boolean getDataBlockHashIndex() {
+    return dataBlockHashIndex;
+  }
+
+  boolean getFlatIndex() {
+    return flatIndex;
+  }
+
+  FilterPolicy.Writer getFilterPolicy() {
+    return filterPolicy;
+  }
+
+  boolean getFullFilter() {
+    return fullFilter;
+  }
+
+  PrefixExtractor getPrefixExtractor() {
+    return prefixExtractor;
+  }
+
+  int getMaxDictBytes() {
+    return maxDictBytes;
+  }
+
+  boolean getVerifyChecksums() {
+    return verifyChecksums;
+  }
+
+  int getParallelCompression() {
+    return parallelCompression;
+  }
+
+  int getWriteBufferSize() {
+    return writeBufferSize;
+  }
+
+  long getBytesPerSync() {
+    return bytesPerSync;
+  }
+}
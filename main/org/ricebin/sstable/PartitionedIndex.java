@@ -0,0 +1,76 @@
+package org.ricebin.sstable;
+
+import com.google.common.collect.Iterators;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import org.ricebin.slice.Slice;
+
+/**
+ * Two level index: a top level block maps the last key of every index partition to the handle
+ * of that partition, and the partitions map keys to data blocks. Only the top level is kept in
+ * memory; partitions are read on demand.
+ */
+// https://github.com/facebook/rocksdb/wiki/Partitioned-Index-Filters
+class PartitionedIndex implements Index {
+
+  interface PartitionReader {
+
+    PrefixBlock<BlockHandle> read(long offset, int size) throws IOException;
+  }
+
+  private final PrefixBlock<BlockHandle> topLevel;
+  private final PartitionReader partitionReader;
+
+  PartitionedIndex(PrefixBlock<BlockHandle> topLevel, PartitionReader partitionReader) {
+    this.topLevel = topLevel;
+    this.partitionReader = partitionReader;
+  }
+
+  @Override
+  public Iterator<Entry<Slice, BlockHandle>> iterator() {
+    return Iterators.concat(
+        Iterators.transform(topLevel.iterator(), e -> partition(e.getValue()).iterator()));
+  }
+
+  @Override
+  public Iterator<Entry<Slice, BlockHandle>> iterator(Slice lowerBound) {
+    return Iterators.concat(
+        Iterators.transform(
+            topLevel.iterator(lowerBound),
+            e -> partition(e.getValue()).iterator(lowerBound)));
+  }
+
+  @Override
+  public Cursor<BlockHandle> cursor() {
+    return new TwoLevelCursor<>(topLevel.cursor(), handle -> partition(handle).cursor());
+  }
+
+  @Override
+  public long memoryUsage() {
+    return topLevel.size();
+  }
+
+  @Override
+  public boolean seek(Slice key, LookupScratch scratch) throws IOException {
+    if (!topLevel.seek(key, scratch)) {
+      return false;
+    }
+    BlockHandle.decode(scratch.block, scratch.valueOffset, scratch);
+    PrefixBlock<BlockHandle> partition =
+        partitionReader.read(scratch.blockOffset, scratch.blockSize);
+    if (!partition.seek(key, scratch)) {
+      return false;
+    }
+    BlockHandle.decode(scratch.block, scratch.valueOffset, scratch);
+    return true;
+  }
+
+  private PrefixBlock<BlockHandle> partition(BlockHandle handle) {
+    try {
+      return partitionReader.read(handle.getOffset(), handle.getSize());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -2,9 +2,6 @@ package org.ricebin.sstable;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.AbstractIterator;
-import com.google.common.collect.Iterators;
-import com.google.common.collect.PeekingIterator;
-import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Map.Entry;
@@ -23,6 +20,12 @@ class PrefixBlock<V> implements Block<V> {
   private final Comparator<Slice> keyComparator;
   private final Function<Slice, V> valueDecoder;
   private final Factory factory;
+  // the scratch lookups compare raw bytes unless the block has another order
+  private final boolean bytewise;
+
+  // entries start at restart[0], which is past the hash index if the block has one
+  private final int firstRestart;
+  private final int numHashBuckets;
 
   PrefixBlock(Slice.Factory factory, Slice data,
       Comparator<Slice> keyComparator, Function<Slice, V> valueDecoder) {
@@ -30,44 +33,40 @@ class PrefixBlock<V> implements Block<V> {
     this.factory = factory;
     this.keyComparator = keyComparator;
     this.valueDecoder = valueDecoder;
+    this.bytewise = SliceUtils.isBytewise(keyComparator);
+
+    int restartsEnd = data.len() - 4;
+    int restartCount = data.getInt(restartsEnd);
+    this.firstRestart = restartCount > 0 ? data.getInt(restartsEnd - restartCount * 4) : 0;
+    this.numHashBuckets = BlockHashIndex.numBuckets(data, firstRestart);
+  }
+
+  // size of the uncompressed block contents in bytes
+  int size() {
+    return data.len();
   }
 
   @Override
   public Iterator<Entry<Slice, V>> iterator() {
-    return iterator(0);
+    BlockCursor cursor = new BlockCursor();
+    cursor.seekToFirst();
+    return new PrefixBlockIterator(cursor);
   }
 
   @Override
   public Iterator<Entry<Slice, V>> iterator(Slice lowerBound) {
-    int restartOffset = searchRestarts(lowerBound);
-
-    // advance to the first key >= lowerbound
-    PeekingIterator<Entry<Slice, V>> it =
-        Iterators.peekingIterator(iterator(restartOffset));
-    while (it.hasNext()
-        && keyComparator.compare(it.peek().getKey(), lowerBound) < 0) {
-      it.next();
-    }
-    return it;
+    // positions without decoding or allocating entries for the skipped keys
+    BlockCursor cursor = new BlockCursor();
+    cursor.seek(lowerBound);
+    return new PrefixBlockIterator(cursor);
   }
 
-  private Iterator<Entry<Slice, V>> iterator(int offset) {
-    int numOfRestarts = data.getInt(data.len() - 4);
-
-    int end = data.len() - 4 * (numOfRestarts + 1);
-    if (end < 0) {
-      throw new IllegalStateException();
-    }
-
-    int dataLen = end - offset;
-    if (dataLen < 0) {
-      throw new IllegalStateException();
-    }
-
-    return new PrefixBlockIterator(data.slice(offset, dataLen).newReader());
+  @Override
+  public Cursor<V> cursor() {
+    return new BlockCursor();
   }
 
-  // binary search in restart array to find the first restart >= target
+  // binary search in restart array to find the last restart with key < target, returns its index
   private int searchRestarts(Slice target) {
     int restartsEnd = data.len() - 4;
     int restartCount = data.getInt(restartsEnd);
@@ -102,19 +101,146 @@ class PrefixBlock<V> implements Block<V> {
         right = mid - 1;
       }
     }
-    return data.getInt(restartsBegin + left * 4);
+    return left;
+  }
+
+  /**
+   * Positions {@code scratch} at the first entry whose key is >= target and returns false if
+   * there is no such entry.
+   *
+   * <p>Unlike {@link #iterator(Slice)} this decodes straight into the scratch key buffer and does
+   * not allocate when keys are ordered bytewise, the ordering of leveldb's default comparator.
+   * Other orders wrap each compared key in a slice for the block's comparator.
+   */
+  boolean seek(Slice target, LookupScratch scratch) {
+    int restartsEnd = data.len() - 4;
+    int restartCount = data.getInt(restartsEnd);
+    int restartsBegin = restartsEnd - restartCount * 4;
+
+    // binary search in restart array to find the last restart with key < target
+    int left = 0;
+    int right = restartCount - 1;
+    while (left < right) {
+      int mid = (left + right + 1) >>> 1;
+      int pos = data.getInt(restartsBegin + mid * 4);
+
+      int sharedKeySize = SliceUtils.getVarInt(data, pos);
+      if (sharedKeySize != 0) {
+        throw new IllegalStateException();
+      }
+      pos += 1;
+      int keySize = SliceUtils.getVarInt(data, pos);
+      pos += SliceUtils.varIntLength(keySize);
+      int valueSize = SliceUtils.getVarInt(data, pos);
+      pos += SliceUtils.varIntLength(valueSize);
+
+      if (compare(pos, keySize, target) < 0) {
+        left = mid;
+      } else {
+        right = mid - 1;
+      }
+    }
+
+    // linear scan from the restart point to the first key >= target
+    return scan(data.getInt(restartsBegin + left * 4), restartsBegin, target, scratch) >= 0;
+  }
+
+  /**
+   * Positions {@code scratch} at {@code target} and returns false if the block does not contain
+   * it. With a hash index the restart run holding the key is found with one probe instead of a
+   * binary search, and a key that hashes to an empty bucket is rejected without decoding
+   * anything.
+   */
+  boolean get(Slice target, LookupScratch scratch) {
+    if (numHashBuckets > 0) {
+      int restart = BlockHashIndex.lookup(data, numHashBuckets, target);
+      if (restart == BlockHashIndex.EMPTY) {
+        return false;
+      }
+      if (restart != BlockHashIndex.COLLISION) {
+        int restartsEnd = data.len() - 4;
+        int restartCount = data.getInt(restartsEnd);
+        int restartsBegin = restartsEnd - restartCount * 4;
+        int limit = restart + 1 < restartCount
+            ? data.getInt(restartsBegin + (restart + 1) * 4)
+            : restartsBegin;
+        return scan(data.getInt(restartsBegin + restart * 4), limit, target, scratch) == 0;
+      }
+    }
+    return seek(target, scratch) && compare(scratch.key, scratch.keyLen, target) == 0;
+  }
+
+  // compares the key at data[pos, pos + len) with target
+  private int compare(int pos, int len, Slice target) {
+    return bytewise
+        ? SliceUtils.compare(data, pos, len, target)
+        : keyComparator.compare(data.slice(pos, len), target);
+  }
+
+  private int compare(byte[] key, int len, Slice target) {
+    return bytewise
+        ? SliceUtils.compare(key, len, target)
+        : keyComparator.compare(factory.wrap(key, 0, len), target);
+  }
+
+  // Decodes entries from pos up to limit into scratch until one is >= target. Returns the
+  // comparison of that key with target, or -1 if every key before limit is smaller.
+  private int scan(int pos, int limit, Slice target, LookupScratch scratch) {
+    while (pos < limit) {
+      int sharedKeySize = SliceUtils.getVarInt(data, pos);
+      pos += SliceUtils.varIntLength(sharedKeySize);
+      int unsharedKeySize = SliceUtils.getVarInt(data, pos);
+      pos += SliceUtils.varIntLength(unsharedKeySize);
+      int valueSize = SliceUtils.getVarInt(data, pos);
+      pos += SliceUtils.varIntLength(valueSize);
+
+      int keySize = sharedKeySize + unsharedKeySize;
+      scratch.resizeKeyIfNecessary(keySize);
+      byte[] key = scratch.key;
+      for (int i = 0; i < unsharedKeySize; i++) {
+        key[sharedKeySize + i] = data.getByte(pos + i);
+      }
+      scratch.keyLen = keySize;
+      pos += unsharedKeySize;
+
+      int cmp = compare(key, keySize, target);
+      if (cmp >= 0) {
+        scratch.block = data;
+        scratch.valueOffset = pos;
+        scratch.valueLen = valueSize;
+        return cmp;
+      }
+      pos += valueSize;
+    }
+    return -1;
   }
 
   // https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/table/block.cc#L77
-  private class PrefixBlockIterator extends AbstractIterator<Entry<Slice, V>> {
+  private class BlockCursor implements Cursor<V> {
+
+    private final int restartsBegin;
+    private final int restartCount;
 
-    private final Reader input;
+    // offset of the current entry, restartsBegin if the cursor is not valid
+    private int current;
+    // restart run that contains the current entry
+    private int restartIndex;
+    private int nextOffset;
+    private int valueOffset;
+    private int valueLen;
 
     // shared key buffer
     private byte[] keyBytes = new byte[128];
+    private int keyLen;
+    // wrapper of keyBytes, created on demand for the current entry
+    private Slice key;
 
-    private PrefixBlockIterator(Reader input) {
-      this.input = input;
+    private BlockCursor() {
+      int restartsEnd = data.len() - 4;
+      this.restartCount = data.getInt(restartsEnd);
+      this.restartsBegin = restartsEnd - restartCount * 4;
+      this.current = restartsBegin;
+      this.nextOffset = restartsBegin;
     }
 
     // this is similar to cpp string.resize()
@@ -135,28 +261,174 @@ class PrefixBlock<V> implements Block<V> {
       keyBytes = newKey;
     }
 
+    @Override
+    public boolean isValid() {
+      return current < restartsBegin;
+    }
+
+    @Override
+    public void seekToFirst() {
+      seekToRestartPoint(0);
+      parseNextKey();
+    }
+
+    @Override
+    public void seekToLast() {
+      seekToRestartPoint(restartCount - 1);
+      while (parseNextKey() && nextOffset < restartsBegin) {
+        // keep skipping
+      }
+    }
+
+    @Override
+    public void seek(Slice target) {
+      seekToRestartPoint(searchRestarts(target));
+      parseNextKey();
+      // advance to the first key >= target
+      while (isValid() && keyComparator.compare(key(), target) < 0) {
+        parseNextKey();
+      }
+    }
+
+    @Override
+    public void next() {
+      Preconditions.checkState(isValid());
+      parseNextKey();
+    }
+
+    // Entries can only be decoded forward, so step back to the restart point before the current
+    // entry and scan forward to the entry just before it.
+    @Override
+    public void prev() {
+      Preconditions.checkState(isValid());
+      int original = current;
+      while (restartPoint(restartIndex) >= original) {
+        if (restartIndex == 0) {
+          // no more entries
+          current = restartsBegin;
+          key = null;
+          return;
+        }
+        restartIndex--;
+      }
+
+      seekToRestartPoint(restartIndex);
+      while (parseNextKey() && nextOffset < original) {
+        // loop until end of current entry hits the start of original entry
+      }
+    }
+
+    private int restartPoint(int index) {
+      return data.getInt(restartsBegin + index * 4);
+    }
+
+    private void seekToRestartPoint(int index) {
+      restartIndex = index;
+      nextOffset = restartPoint(index);
+    }
+
+    @Override
+    public Slice key() {
+      Preconditions.checkState(isValid());
+      if (key == null) {
+        key = factory.wrap(keyBytes, 0, keyLen);
+      }
+      return key;
+    }
+
+    @Override
+    public V value() {
+      Preconditions.checkState(isValid());
+      return valueDecoder.apply(data.slice(valueOffset, valueLen));
+    }
+
+    private boolean parseNextKey() {
+      key = null;
+      int pos = nextOffset;
+      if (pos >= restartsBegin) {
+        current = restartsBegin;
+        return false;
+      }
+      current = pos;
+      while (restartIndex + 1 < restartCount && restartPoint(restartIndex + 1) <= current) {
+        restartIndex++;
+      }
+
+      int sharedKeySize = SliceUtils.getVarInt(data, pos);
+      pos += SliceUtils.varIntLength(sharedKeySize);
+      int unsharedKeySize = SliceUtils.getVarInt(data, pos);
+      pos += SliceUtils.varIntLength(unsharedKeySize);
+      int valueSize = SliceUtils.getVarInt(data, pos);
+      pos += SliceUtils.varIntLength(valueSize);
+
+      keyLen = sharedKeySize + unsharedKeySize;
+      resizeKeyIfNecessary(keyLen);
+      for (int i = 0; i < unsharedKeySize; i++) {
+        keyBytes[sharedKeySize + i] = data.getByte(pos + i);
+      }
+      pos += unsharedKeySize;
+
+      valueOffset = pos;
+      valueLen = valueSize;
+      nextOffset = pos + valueSize;
+      return true;
+    }
+  }
+
+  private class PrefixBlockIterator extends AbstractIterator<Entry<Slice, V>> {
+
+    private final BlockCursor cursor;
+    private boolean first = true;
+
+    private PrefixBlockIterator(BlockCursor cursor) {
+      this.cursor = cursor;
+    }
+
     @Override
     protected Entry<Slice, V> computeNext() {
-      if (input.position() == input.len()) {
-        return super.endOfData();
+      if (!first && cursor.isValid()) {
+        cursor.next();
       }
+      first = false;
+      if (!cursor.isValid()) {
+        return endOfData();
+      }
+      return new LazyEntry(cursor.key(), cursor.valueOffset, cursor.valueLen);
+    }
+  }
 
-      int sharedKeySize = input.getVarInt();
-      int unsharedKeySize = input.getVarInt();
-      int valSize = input.getVarInt();
+  // decodes the value on first access; blocks are immutable so this works after the cursor moved
+  private class LazyEntry implements Entry<Slice, V> {
 
-      int keySize = sharedKeySize + unsharedKeySize;
-      resizeKeyIfNecessary(keySize);
+    private final Slice key;
+    private final int valueOffset;
+    private final int valueLen;
+    private V value;
+    private boolean decoded = false;
 
-      input.getBytes(keyBytes, sharedKeySize, unsharedKeySize);
+    private LazyEntry(Slice key, int valueOffset, int valueLen) {
+      this.key = key;
+      this.valueOffset = valueOffset;
+      this.valueLen = valueLen;
+    }
 
-      Slice value = input.slice(valSize);
+    @Override
+    public Slice getKey() {
+      return key;
+    }
 
-      input.position(input.position() + valSize);
+    @Override
+    public V getValue() {
+      if (!decoded) {
+        value = valueDecoder.apply(data.slice(valueOffset, valueLen));
+        decoded = true;
+      }
+      return value;
+    }
 
-      Slice keySlice = factory.wrap(keyBytes, 0, keySize);
-      // TODO(ricebin): we can prob lazy decode value
-      return new SimpleImmutableEntry<>(keySlice, valueDecoder.apply(value));
+    @Override
+    public V setValue(V value) {
+      throw new UnsupportedOperationException();
     }
   }
 }
@@ -4,6 +4,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.ricebin.slice.Slice;
@@ -19,17 +20,33 @@ class PrefixBlockBuilder implements BlockBuilder {
   static final int BLOCK_SIZE = 4 * 1024;
 
   private final Slice.Factory sliceFactory;
+  private final Comparator<Slice> comparator;
 
   // TODO(ricebin): use fastutil or roll custom
   private final List<Integer> restarts;
 
+  // key hashes and the restart run of each key, only kept when writing a hash index
+  private final boolean hashIndex;
+  private final List<Integer> keyHashes = new ArrayList<>();
+  private final List<Integer> keyRestarts = new ArrayList<>();
+
   private final AtomicBoolean finished = new AtomicBoolean(false);
   private final Slice.Factory.ReusableSink blockBuf;
   private Slice prevKey;
   private int restartCounter = 0;
 
   PrefixBlockBuilder(Slice.Factory sliceFactory) {
+    this(sliceFactory, false);
+  }
+
+  PrefixBlockBuilder(Slice.Factory sliceFactory, boolean hashIndex) {
+    this(sliceFactory, sliceFactory.comparator(), hashIndex);
+  }
+
+  PrefixBlockBuilder(Slice.Factory sliceFactory, Comparator<Slice> comparator, boolean hashIndex) {
     this.sliceFactory = sliceFactory;
+    this.comparator = comparator;
+    this.hashIndex = hashIndex;
     this.prevKey = sliceFactory.empty();
 
     this.blockBuf = sliceFactory.newDynamicSink(BLOCK_SIZE);
@@ -40,8 +57,8 @@ class PrefixBlockBuilder implements BlockBuilder {
 
   @Override
   public void add(Slice key, Slice value) {
-    // do not allow duplicate key
-    checkArgument(sliceFactory.comparator().compare(key, prevKey) > 0);
+    // do not allow duplicate key, the first key can be anything in the comparator's order
+    checkArgument(isEmpty() || comparator.compare(key, prevKey) > 0);
 
     final int sharedKeySize;
     if (restartCounter < RESTART_INTERVAL) {
@@ -62,6 +79,11 @@ class PrefixBlockBuilder implements BlockBuilder {
     blockBuf.putSlice(key.slice(sharedKeySize, unsharedKeySize));
     blockBuf.putSlice(value);
 
+    if (hashIndex) {
+      keyHashes.add(BlockHashIndex.hash(key));
+      keyRestarts.add(restarts.size() - 1);
+    }
+
     restartCounter++;
     prevKey = key;
   }
@@ -73,6 +95,9 @@ class PrefixBlockBuilder implements BlockBuilder {
   @Override
   public Slice finish() {
     checkState(finished.compareAndSet(false, true));
+    if (hashIndex && !keyHashes.isEmpty() && restarts.size() <= BlockHashIndex.MAX_RESTARTS) {
+      return finishWithHashIndex();
+    }
     for (int restart : restarts) {
       blockBuf.putInt(restart);
     }
@@ -80,14 +105,34 @@ class PrefixBlockBuilder implements BlockBuilder {
     return blockBuf.finish();
   }
 
+  // The hash index goes in front of the first entry and the restart offsets are shifted past it.
+  // Readers start decoding at restart[0], so leveldb never looks at these bytes.
+  private Slice finishWithHashIndex() {
+    byte[] buckets = BlockHashIndex.buildBuckets(keyHashes, keyRestarts);
+    int indexLen = BlockHashIndex.encodedLength(buckets.length);
+
+    Slice entries = blockBuf.finish();
+    Slice.Factory.Sink<?> out = sliceFactory.newFixedSizeSink(
+        indexLen + entries.len() + Slice.SIZE_OF_INT * (restarts.size() + 1));
+    BlockHashIndex.encode(buckets, out);
+    out.putSlice(entries);
+    for (int restart : restarts) {
+      out.putInt(indexLen + restart);
+    }
+    out.putInt(restarts.size());
+    return out.finish();
+  }
+
   @Override
   public void reset() {
     restarts.clear();
     // First restart point is at offset 0
     restarts.add(0);
     restartCounter = 0;
+    keyHashes.clear();
+    keyRestarts.clear();
     blockBuf.reset();
-    prevKey = null;
+    prevKey = sliceFactory.empty();
 
     checkState(finished.compareAndSet(true, false));
   }
@@ -0,0 +1,91 @@
+package org.ricebin.sstable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.ricebin.slice.Slice;
+
+/**
+ * Extracts the prefix of a key that prefix scans are done on. With {@link
+ * Options#prefixExtractor} the prefixes of all keys are added to the table filter next to the
+ * keys themselves, and {@link Table#prefixIterator} can then skip tables without the prefix
+ * without reading any data block.
+ *
+ * <p>The name is stored in the table; a table is only prefix filtered when it was written with an
+ * extractor of the same name, so change the name whenever the extraction changes.
+ */
+// https://github.com/facebook/rocksdb/blob/main/include/rocksdb/slice_transform.h
+public interface PrefixExtractor {
+
+  String name();
+
+  /**
+   * Returns true if {@code key} has a prefix. Keys without one are only added as whole keys.
+   */
+  boolean inDomain(Slice key);
+
+  /**
+   * Returns the prefix of a key that is {@link #inDomain}, which has to be a leading part of the
+   * key, and the prefix of a prefix has to be the prefix itself.
+   */
+  Slice transform(Slice key);
+
+  /**
+   * Returns an extractor for the first {@code length} bytes of keys that have that many.
+   */
+  static PrefixExtractor fixedLength(int length) {
+    checkArgument(length > 0);
+    return new PrefixExtractor() {
+      @Override
+      public String name() {
+        return "ricebin.FixedPrefix." + length;
+      }
+
+      @Override
+      public boolean inDomain(Slice key) {
+        return key.len() >= length;
+      }
+
+      @Override
+      public Slice transform(Slice key) {
+        return key.slice(0, length);
+      }
+    };
+  }
+
+  /**
+   * Returns an extractor for the part of a key up to and including its {@code count}-th {@code
+   * delimiter}; for keys like {@code tenant/entity/ts}, {@code delimited('/', 2)} extracts {@code
+   * tenant/entity/}. Keys with fewer delimiters have no prefix.
+   */
+  static PrefixExtractor delimited(char delimiter, int count) {
+    checkArgument(delimiter < 0x80, "delimiter has to be a single byte character");
+    checkArgument(count > 0);
+    return new PrefixExtractor() {
+      @Override
+      public String name() {
+        return "ricebin.DelimitedPrefix." + (int) delimiter + "." + count;
+      }
+
+      @Override
+      public boolean inDomain(Slice key) {
+        return prefixLength(key) > 0;
+      }
+
+      @Override
+      public Slice transform(Slice key) {
+        return key.slice(0, prefixLength(key));
+      }
+
+      // length up to and including the count-th delimiter, or 0 if there are fewer
+      private int prefixLength(Slice key) {
+        int found = 0;
+        for (int i = 0; i < key.len(); i++) {
+          if (key.getByte(i) == delimiter && ++found == count) {
+            return i + 1;
+          }
+        }
+        return 0;
+      }
+    };
+  }
+}
@@ -0,0 +1,92 @@
+package org.ricebin.sstable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the blocking part of asynchronous table lookups.
+ *
+ * <p>Each submitted task reads one data block, or for a table with a partitioned index also the
+ * index partition before it, or the partitions that the keys of a multi get fall in. At most
+ * {@code maxInFlight} tasks run at the same time, and each makes its reads one after the other,
+ * which bounds the number of outstanding positional reads no matter how many lookups are queued.
+ */
+public class ReadExecutor {
+
+  static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+  private static final class DefaultHolder {
+
+    private static final ReadExecutor INSTANCE =
+        new ReadExecutor(newDefaultExecutor(DEFAULT_MAX_IN_FLIGHT), DEFAULT_MAX_IN_FLIGHT);
+  }
+
+  private final Executor executor;
+  private final Semaphore inFlight;
+
+  public ReadExecutor(Executor executor, int maxInFlight) {
+    checkArgument(maxInFlight > 0);
+    this.executor = executor;
+    this.inFlight = new Semaphore(maxInFlight);
+  }
+
+  /**
+   * Returns a shared instance that runs lookups on virtual threads when the JDK supports them.
+   */
+  public static ReadExecutor getDefault() {
+    return DefaultHolder.INSTANCE;
+  }
+
+  // Virtual threads make a blocked read cost a few hundred bytes instead of an OS thread. They
+  // need JDK 21, so look them up reflectively and otherwise fall back to a pool of daemon threads
+  // that is just large enough for maxInFlight reads.
+  static Executor newDefaultExecutor(int maxInFlight) {
+    try {
+      Method newVirtualThreadPerTaskExecutor =
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (Executor) newVirtualThreadPerTaskExecutor.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newFixedThreadPool(
+          maxInFlight,
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("sstable-read-%d").build());
+    }
+  }
+
+  <T> CompletableFuture<T> submit(Callable<T> read) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    try {
+      executor.execute(() -> run(read, future));
+    } catch (RejectedExecutionException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  private <T> void run(Callable<T> read, CompletableFuture<T> future) {
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.completeExceptionally(e);
+      return;
+    }
+    try {
+      // skip lookups that were cancelled while they waited
+      if (!future.isDone()) {
+        future.complete(read.call());
+      }
+    } catch (Throwable t) {
+      future.completeExceptionally(t);
+    } finally {
+      inFlight.release();
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package org.ricebin.sstable;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.ricebin.slice.Slice;
+
+/**
+ * Range scan that reads the next data blocks in the background while the current one is being
+ * consumed.
+ *
+ * <p>The readahead window starts at {@link #INITIAL_WINDOW} blocks and doubles every time the
+ * scan drains a prefetched run, up to {@link #MAX_WINDOW}. Blocks that are adjacent in the file
+ * are fetched with a single positional read.
+ *
+ * <p>{@link #close()} cancels the reads that are still queued on the executor; reads that are
+ * already running complete and are dropped.
+ */
+class ReadaheadIterator extends AbstractIterator<Entry<Slice, Slice>>
+    implements CloseableIterator<Entry<Slice, Slice>> {
+
+  static final int INITIAL_WINDOW = 2;
+  static final int MAX_WINDOW = 64;
+
+  // upper bound for one merged read
+  static final int MAX_READ_SIZE = 1 << 20;
+
+  private final Slice.Factory sliceFactory;
+  private final ReadOnlyFile file;
+  private final ReadExecutor executor;
+  private final PeekingIterator<BlockHandle> handles;
+  private final Slice lowerBound;
+  private final CompressionDict compressionDict;
+  private final boolean verifyChecksums;
+
+  private final ArrayDeque<CompletableFuture<List<PrefixBlock<Slice>>>> inFlight =
+      new ArrayDeque<>();
+  private int inFlightBlocks = 0;
+  private int window = INITIAL_WINDOW;
+
+  private Iterator<PrefixBlock<Slice>> currentRun = Collections.emptyIterator();
+  private Iterator<Entry<Slice, Slice>> current = Collections.emptyIterator();
+  private boolean first = true;
+  private boolean closed = false;
+
+  ReadaheadIterator(
+      Slice.Factory sliceFactory,
+      ReadOnlyFile file,
+      ReadExecutor executor,
+      Iterator<BlockHandle> handles,
+      Slice lowerBound,
+      CompressionDict compressionDict,
+      boolean verifyChecksums) {
+    this.sliceFactory = sliceFactory;
+    this.file = file;
+    this.executor = executor;
+    this.handles = Iterators.peekingIterator(handles);
+    this.lowerBound = lowerBound;
+    this.compressionDict = compressionDict;
+    this.verifyChecksums = verifyChecksums;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    for (CompletableFuture<List<PrefixBlock<Slice>>> read : inFlight) {
+      read.cancel(false);
+    }
+    inFlight.clear();
+    inFlightBlocks = 0;
+    currentRun = Collections.emptyIterator();
+    current = Collections.emptyIterator();
+  }
+
+  @Override
+  protected Entry<Slice, Slice> computeNext() {
+    if (closed) {
+      return endOfData();
+    }
+    while (!current.hasNext()) {
+      PrefixBlock<Slice> block = nextBlock();
+      if (block == null) {
+        return endOfData();
+      }
+      current = first && lowerBound != null ? block.iterator(lowerBound) : block.iterator();
+      first = false;
+    }
+    return current.next();
+  }
+
+  private PrefixBlock<Slice> nextBlock() {
+    if (currentRun.hasNext()) {
+      return currentRun.next();
+    }
+
+    fill();
+    CompletableFuture<List<PrefixBlock<Slice>>> next = inFlight.poll();
+    if (next == null) {
+      return null;
+    }
+    List<PrefixBlock<Slice>> blocks;
+    try {
+      blocks = next.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+    inFlightBlocks -= blocks.size();
+
+    // the scan is still going, read further ahead
+    window = Math.min(window * 2, MAX_WINDOW);
+    fill();
+
+    currentRun = blocks.iterator();
+    return currentRun.next();
+  }
+
+  // issues reads until window blocks are in flight, merging adjacent blocks into one read
+  private void fill() {
+    while (inFlightBlocks < window && handles.hasNext()) {
+      List<BlockHandle> run = new ArrayList<>();
+      BlockHandle firstHandle = handles.next();
+      run.add(firstHandle);
+      long start = firstHandle.getOffset();
+      long end = endOf(firstHandle);
+      while (inFlightBlocks + run.size() < window
+          && handles.hasNext()
+          && handles.peek().getOffset() == end
+          && endOf(handles.peek()) - start <= MAX_READ_SIZE) {
+        BlockHandle handle = handles.next();
+        run.add(handle);
+        end = endOf(handle);
+      }
+
+      inFlight.add(executor.submit(() -> readRun(run)));
+      inFlightBlocks += run.size();
+    }
+  }
+
+  private List<PrefixBlock<Slice>> readRun(List<BlockHandle> run) throws IOException {
+    long start = run.get(0).getOffset();
+    int len = (int) (endOf(run.get(run.size() - 1)) - start);
+    ByteBuffer buf = file.readFully(start, len);
+
+    ImmutableList.Builder<PrefixBlock<Slice>> blocks = ImmutableList.builder();
+    for (BlockHandle handle : run) {
+      int pos = (int) (handle.getOffset() - start);
+      int blockLen = handle.getSize() + BlockTrailer.MAX_ENCODED_LENGTH;
+      ByteBuffer dataAndTrailer = SliceUtils.slice(buf, pos, blockLen);
+      blocks.add(Table.decodeBlock(
+          sliceFactory, dataAndTrailer, handle.getSize(), s -> s, compressionDict,
+          verifyChecksums));
+    }
+    return blocks.build();
+  }
+
+  private static long endOf(BlockHandle handle) {
+    return handle.getOffset() + handle.getSize() + BlockTrailer.MAX_ENCODED_LENGTH;
+  }
+}
@@ -0,0 +1,44 @@
+package org.ricebin.sstable;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import org.ricebin.slice.Slice;
+
+// the leveldb index: one block of (key, data block handle) entries
+class SingleLevelIndex implements Index {
+
+  private final PrefixBlock<BlockHandle> block;
+
+  SingleLevelIndex(PrefixBlock<BlockHandle> block) {
+    this.block = block;
+  }
+
+  @Override
+  public Iterator<Entry<Slice, BlockHandle>> iterator() {
+    return block.iterator();
+  }
+
+  @Override
+  public Iterator<Entry<Slice, BlockHandle>> iterator(Slice lowerBound) {
+    return block.iterator(lowerBound);
+  }
+
+  @Override
+  public Cursor<BlockHandle> cursor() {
+    return block.cursor();
+  }
+
+  @Override
+  public long memoryUsage() {
+    return block.size();
+  }
+
+  @Override
+  public boolean seek(Slice key, LookupScratch scratch) {
+    if (!block.seek(key, scratch)) {
+      return false;
+    }
+    BlockHandle.decode(scratch.block, scratch.valueOffset, scratch);
+    return true;
+  }
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.util.Comparator;
 import org.ricebin.slice.ByteBufferSlice;
 import org.ricebin.slice.Slice;
 
@@ -19,7 +20,98 @@ class SliceUtils {
     return minLength;
   }
 
+  // https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/util/coding.cc#L86
+  // absolute variant of Slice.Reader.getVarInt() that does not need a reader
+  static int getVarInt(Slice slice, int pos) {
+    int result = 0;
+    for (int shift = 0; shift <= 28; shift += 7) {
+      int b = slice.getByte(pos++);
+      if ((b & 128) == 0) {
+        return result | (b << shift);
+      }
+      result |= ((b & 127) << shift);
+    }
+    throw new IllegalStateException();
+  }
+
+  static long getVarLong(Slice slice, int pos) {
+    long result = 0;
+    for (int shift = 0; shift <= 63; shift += 7) {
+      long b = slice.getByte(pos++) & 0xFF;
+      if ((b & 128) == 0) {
+        return result | (b << shift);
+      }
+      result |= ((b & 127) << shift);
+    }
+    throw new IllegalStateException();
+  }
+
+  // https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/util/coding.cc#L107
+  static int varIntLength(long v) {
+    int len = 1;
+    while (v >= 128) {
+      v >>>= 7;
+      len++;
+    }
+    return len;
+  }
+
+  // leveldb's default order, which the metaindex keeps whatever the table's comparator is
+  static final Comparator<Slice> BYTEWISE = (a, b) -> compare(a, 0, a.len(), b);
+
+  // true if keys are in leveldb's default order, so the compare methods below agree with it
+  static boolean isBytewise(Comparator<?> comparator) {
+    return comparator == BYTEWISE || comparator == ByteBufferSlice.FACTORY.comparator();
+  }
+
+  // bytewise comparison of the bytes in data[offset, offset + len) against target
+  static int compare(Slice data, int offset, int len, Slice target) {
+    int minLen = Math.min(len, target.len());
+    for (int i = 0; i < minLen; i++) {
+      int v1 = data.getUnsignedByte(offset + i);
+      int v2 = target.getUnsignedByte(i);
+      if (v1 != v2) {
+        return v1 - v2;
+      }
+    }
+    return len - target.len();
+  }
+
+  static int compare(byte[] key, int len, Slice target) {
+    return compare(key, 0, len, target);
+  }
+
+  static int compare(byte[] key, int offset, int len, Slice target) {
+    int minLen = Math.min(len, target.len());
+    for (int i = 0; i < minLen; i++) {
+      int v1 = key[offset + i] & 0xFF;
+      int v2 = target.getUnsignedByte(i);
+      if (v1 != v2) {
+        return v1 - v2;
+      }
+    }
+    return len - target.len();
+  }
+
+  // copies the slice into a new array, for keys that must outlive a shared key buffer
+  static Slice copy(Slice.Factory factory, Slice slice) {
+    byte[] bytes = new byte[slice.len()];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = slice.getByte(i);
+    }
+    return factory.wrap(bytes, 0, bytes.length);
+  }
+
   static ByteBuffer duplicate(ByteBuffer buf) {
     return buf.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
   }
+
+  // ByteBuffer.slice(int, int) is only available from jdk 13
+  static ByteBuffer slice(ByteBuffer buf, int offset, int len) {
+    return buf.duplicate()
+        .position(offset)
+        .limit(offset + len)
+        .slice()
+        .order(ByteOrder.LITTLE_ENDIAN);
+  }
 }
@@ -0,0 +1,308 @@
+package org.ricebin.sstable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Pure Java implementation of the Snappy block format: the uncompressed length as a varint,
+ * followed by literals and back references (copies) of up to 64 bytes.
+ *
+ * <p>The compressor follows snappy's greedy matcher: it hashes 4 byte sequences into a table of
+ * earlier positions, and skips ahead faster the longer it goes without finding a match, so
+ * incompressible data is passed over quickly.
+ */
+// https://github.com/google/snappy/blob/main/format_description.txt
+// https://github.com/google/snappy/blob/main/snappy.cc
+final class Snappy {
+
+  private static final int LITERAL = 0;
+  private static final int COPY_1_BYTE_OFFSET = 1;
+  private static final int COPY_2_BYTE_OFFSET = 2;
+  private static final int COPY_4_BYTE_OFFSET = 3;
+
+  // input is compressed in independent fragments, so copy offsets fit in 2 bytes
+  private static final int BLOCK_SIZE = 1 << 16;
+  private static final int MAX_HASH_TABLE_SIZE = 1 << 14;
+  // no matches are looked for in the last bytes of a fragment, which keeps 4 byte loads in bounds
+  private static final int INPUT_MARGIN_BYTES = 15;
+
+  private static final VarHandle INT_LE =
+      MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final VarHandle LONG_LE =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private Snappy() {}
+
+  static int maxCompressedLength(int length) {
+    return 32 + length + length / 6;
+  }
+
+  /**
+   * Compresses {@code input[offset, offset + length)} into {@code output}, which must have room
+   * for {@link #maxCompressedLength} bytes, and returns the compressed length.
+   */
+  static int compress(byte[] input, int offset, int length, byte[] output) {
+    int op = putVarInt(output, 0, length);
+    int[] table = new int[hashTableSize(length)];
+    for (int pos = 0; pos < length; pos += BLOCK_SIZE) {
+      int fragmentLength = Math.min(length - pos, BLOCK_SIZE);
+      if (pos > 0) {
+        Arrays.fill(table, 0);
+      }
+      op = compressFragment(input, offset + pos, fragmentLength, output, op, table);
+    }
+    return op;
+  }
+
+  private static int hashTableSize(int length) {
+    int size = 256;
+    while (size < MAX_HASH_TABLE_SIZE && size < length) {
+      size <<= 1;
+    }
+    return size;
+  }
+
+  // https://github.com/google/snappy/blob/main/snappy.cc#L700
+  private static int compressFragment(
+      byte[] input, int base, int length, byte[] output, int op, int[] table) {
+    int shift = 32 - Integer.numberOfTrailingZeros(table.length);
+    int end = base + length;
+    int nextEmit = base;
+
+    if (length >= INPUT_MARGIN_BYTES) {
+      int ipLimit = end - INPUT_MARGIN_BYTES;
+      int ip = base + 1;
+      int nextHash = hash(load32(input, ip), shift);
+
+      outer:
+      while (true) {
+        // Look for a 4 byte match, stepping further the longer none is found
+        int skip = 32;
+        int nextIp = ip;
+        int candidate;
+        do {
+          ip = nextIp;
+          int hash = nextHash;
+          int bytesBetweenHashLookups = skip++ >> 5;
+          nextIp = ip + bytesBetweenHashLookups;
+          if (nextIp > ipLimit) {
+            break outer;
+          }
+          nextHash = hash(load32(input, nextIp), shift);
+          candidate = base + table[hash];
+          table[hash] = ip - base;
+        } while (load32(input, ip) != load32(input, candidate));
+
+        op = emitLiteral(input, nextEmit, ip - nextEmit, output, op);
+
+        // Emit copies as long as the bytes right after the last one match again
+        do {
+          int matched = 4 + matchLength(input, candidate + 4, ip + 4, end);
+          op = emitCopy(output, op, ip - candidate, matched);
+          ip += matched;
+          nextEmit = ip;
+          if (ip >= ipLimit) {
+            break outer;
+          }
+          table[hash(load32(input, ip - 1), shift)] = ip - 1 - base;
+          int hash = hash(load32(input, ip), shift);
+          candidate = base + table[hash];
+          table[hash] = ip - base;
+        } while (load32(input, ip) == load32(input, candidate));
+
+        ip++;
+        nextHash = hash(load32(input, ip), shift);
+      }
+    }
+
+    if (nextEmit < end) {
+      op = emitLiteral(input, nextEmit, end - nextEmit, output, op);
+    }
+    return op;
+  }
+
+  private static int matchLength(byte[] input, int candidate, int ip, int end) {
+    int matched = 0;
+    // compare 8 bytes at a time, the first differing bit gives the match length
+    while (ip + matched + 8 <= end) {
+      long diff = (long) LONG_LE.get(input, candidate + matched)
+          ^ (long) LONG_LE.get(input, ip + matched);
+      if (diff != 0) {
+        return matched + (Long.numberOfTrailingZeros(diff) >>> 3);
+      }
+      matched += 8;
+    }
+    while (ip + matched < end && input[candidate + matched] == input[ip + matched]) {
+      matched++;
+    }
+    return matched;
+  }
+
+  private static int emitLiteral(byte[] input, int pos, int length, byte[] output, int op) {
+    int n = length - 1;
+    if (n < 60) {
+      output[op++] = (byte) (LITERAL | (n << 2));
+    } else {
+      int count = 0;
+      int base = op++;
+      while (n > 0) {
+        output[op++] = (byte) n;
+        n >>>= 8;
+        count++;
+      }
+      // 60 to 63 for 1 to 4 length bytes
+      output[base] = (byte) (LITERAL | ((59 + count) << 2));
+    }
+    System.arraycopy(input, pos, output, op, length);
+    return op + length;
+  }
+
+  private static int emitCopy(byte[] output, int op, int offset, int length) {
+    // Emit 64 byte copies while the rest would not fit one, leaving at least 4 bytes
+    while (length >= 68) {
+      op = emitCopyAtMost64(output, op, offset, 64);
+      length -= 64;
+    }
+    if (length > 64) {
+      op = emitCopyAtMost64(output, op, offset, 60);
+      length -= 60;
+    }
+    return emitCopyAtMost64(output, op, offset, length);
+  }
+
+  private static int emitCopyAtMost64(byte[] output, int op, int offset, int length) {
+    if (length < 12 && offset < 2048) {
+      output[op++] = (byte) (COPY_1_BYTE_OFFSET | ((length - 4) << 2) | ((offset >>> 8) << 5));
+      output[op++] = (byte) offset;
+    } else {
+      output[op++] = (byte) (COPY_2_BYTE_OFFSET | ((length - 1) << 2));
+      output[op++] = (byte) offset;
+      output[op++] = (byte) (offset >>> 8);
+    }
+    return op;
+  }
+
+  /**
+   * Returns the uncompressed length stored at the position of {@code input}.
+   */
+  static int uncompressedLength(ByteBuffer input) {
+    int pos = input.position();
+    int result = 0;
+    for (int shift = 0; shift <= 28; shift += 7) {
+      checkArgument(pos < input.limit(), "corrupted snappy input");
+      int b = input.get(pos++) & 0xff;
+      result |= (b & 0x7f) << shift;
+      if (b < 0x80) {
+        checkArgument(result >= 0, "corrupted snappy input");
+        return result;
+      }
+    }
+    throw new IllegalArgumentException("corrupted snappy input");
+  }
+
+  /**
+   * Uncompresses the remaining bytes of {@code input} into a new buffer of exactly the
+   * uncompressed length.
+   */
+  static ByteBuffer uncompress(ByteBuffer input) {
+    int length = uncompressedLength(input);
+    byte[] output = new byte[length];
+
+    // decode from the backing array, blocks of memory mapped files are copied once
+    byte[] in;
+    int ip;
+    int limit;
+    if (input.hasArray()) {
+      in = input.array();
+      ip = input.arrayOffset() + input.position();
+      limit = input.arrayOffset() + input.limit();
+    } else {
+      in = new byte[input.remaining()];
+      input.duplicate().get(in);
+      ip = 0;
+      limit = in.length;
+    }
+    ip += SliceUtils.varIntLength(length);
+    int op = 0;
+    while (ip < limit) {
+      int tag = in[ip++] & 0xff;
+      int len;
+      int offset;
+      switch (tag & 3) {
+        case LITERAL:
+          len = tag >>> 2;
+          if (len >= 60) {
+            int count = len - 59;
+            checkArgument(ip + count <= limit, "corrupted snappy input");
+            len = 0;
+            for (int i = 0; i < count; i++) {
+              len |= (in[ip++] & 0xff) << (8 * i);
+            }
+          }
+          len++;
+          checkArgument(len > 0 && ip + len <= limit && op + len <= length,
+              "corrupted snappy input");
+          System.arraycopy(in, ip, output, op, len);
+          ip += len;
+          op += len;
+          continue;
+        case COPY_1_BYTE_OFFSET:
+          checkArgument(ip + 1 <= limit, "corrupted snappy input");
+          len = 4 + ((tag >>> 2) & 7);
+          offset = ((tag >>> 5) << 8) | (in[ip++] & 0xff);
+          break;
+        case COPY_2_BYTE_OFFSET:
+          checkArgument(ip + 2 <= limit, "corrupted snappy input");
+          len = 1 + (tag >>> 2);
+          offset = (in[ip] & 0xff) | ((in[ip + 1] & 0xff) << 8);
+          ip += 2;
+          break;
+        default:
+          checkArgument(ip + 4 <= limit, "corrupted snappy input");
+          len = 1 + (tag >>> 2);
+          offset = (in[ip] & 0xff)
+              | ((in[ip + 1] & 0xff) << 8)
+              | ((in[ip + 2] & 0xff) << 16)
+              | ((in[ip + 3] & 0xff) << 24);
+          ip += 4;
+          break;
+      }
+      checkArgument(offset > 0 && offset <= op && op + len <= length,
+          "corrupted snappy input");
+      if (offset >= len) {
+        System.arraycopy(output, op - offset, output, op, len);
+        op += len;
+      } else {
+        // overlapping copy, repeats the last offset bytes
+        for (int i = 0; i < len; i++) {
+          output[op] = output[op - offset];
+          op++;
+        }
+      }
+    }
+    checkArgument(op == length, "corrupted snappy input");
+    return ByteBuffer.wrap(output).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static int load32(byte[] input, int pos) {
+    return (int) INT_LE.get(input, pos);
+  }
+
+  private static int hash(int bytes, int shift) {
+    return (bytes * 0x1e35a7bd) >>> shift;
+  }
+
+  private static int putVarInt(byte[] output, int op, int value) {
+    while ((value & ~0x7f) != 0) {
+      output[op++] = (byte) ((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    output[op++] = (byte) value;
+    return op;
+  }
+}
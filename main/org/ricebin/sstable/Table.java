@@ -1,16 +1,29 @@
 package org.ricebin.sstable;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterators;
-import com.google.common.primitives.Ints;
+import com.google.common.collect.PeekingIterator;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.ricebin.slice.Slice;
 
 public class Table {
@@ -18,34 +31,140 @@ public class Table {
   private final ReadOnlyFile inputFile;
   private final Slice.Factory sliceFactory;
 
-  private final Block<BlockHandle> blockIndex;
+  private final Index blockIndex;
   private final Function<BlockHandle, Block<Slice>> getBlock;
   final FilterBlock filterBlock;
+  final FullFilterBlock fullFilter;
+  // non null if the filter also holds the prefixes extracted by it
+  private final PrefixExtractor prefixExtractor;
+  // dictionary the data blocks are compressed with, or null
+  private final CompressionDict compressionDict;
+  private final boolean verifyChecksums;
+
+  private final BlockCache blockCache;
+  private final long cacheId;
+
+  // data blocks end before the metaindex, used as the offset of keys past the last block
+  private final long metaIndexOffset;
 
   Table(
       ReadOnlyFile inputFile,
       Slice.Factory sliceFactory,
-      Block<BlockHandle> blockIndex,
-      FilterBlock filterBlock) {
+      long metaIndexOffset,
+      PrefixBlock<BlockHandle> indexBlock,
+      IndexType indexType,
+      boolean flatIndex,
+      FilterBlock filterBlock,
+      FullFilterBlock fullFilter,
+      PrefixExtractor prefixExtractor,
+      CompressionDict compressionDict,
+      boolean verifyChecksums,
+      BlockCache blockCache) {
     this.inputFile = inputFile;
     this.sliceFactory = sliceFactory;
-    this.blockIndex = blockIndex;
+    this.metaIndexOffset = metaIndexOffset;
     this.filterBlock = filterBlock;
+    this.fullFilter = fullFilter;
+    this.prefixExtractor = prefixExtractor;
+    this.compressionDict = compressionDict;
+    this.verifyChecksums = verifyChecksums;
+    this.blockCache = blockCache;
+    this.cacheId = blockCache != null ? blockCache.newId() : 0;
+    Index index;
+    if (indexType == IndexType.TWO_LEVEL_INDEX_SEARCH) {
+      index = new PartitionedIndex(indexBlock, this::readIndexPartition);
+    } else {
+      index = new SingleLevelIndex(indexBlock);
+    }
+    this.blockIndex = flatIndex ? new FlatIndex(sliceFactory, index.iterator()) : index;
     this.getBlock =
         blockHandle -> {
           try {
-            return readBlock(sliceFactory, inputFile, blockHandle, s -> s);
+            return readDataBlock(blockHandle);
           } catch (IOException e) {
             throw new RuntimeException(e);
           }
         };
   }
 
+  /**
+   * Returns the number of bytes of index data this table keeps in memory.
+   */
+  public long indexMemoryUsage() {
+    return blockIndex.memoryUsage();
+  }
+
+  /**
+   * Returns the approximate file offset where the data for key begins, or would begin if the key
+   * were in the table. Only the index is consulted, no data block is read.
+   */
+  // https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/table/table.cc#L252
+  public long approximateOffsetOf(Slice key) throws IOException {
+    LookupScratch scratch = new LookupScratch();
+    if (blockIndex.seek(key, scratch)) {
+      return scratch.blockOffset;
+    }
+    // key is past the last key in the file, approximate the offset by returning the offset of
+    // the metaindex block (which is right near the end of the file)
+    return metaIndexOffset;
+  }
+
+  /**
+   * Returns the approximate number of bytes of data for the keys in [lowerBound, upperBound).
+   */
+  public long approximateSize(Slice lowerBound, Slice upperBound) throws IOException {
+    return Math.max(0, approximateOffsetOf(upperBound) - approximateOffsetOf(lowerBound));
+  }
+
+  /**
+   * Returns up to {@code numParts - 1} increasing keys that cut the table into {@code numParts}
+   * ranges of roughly equal size: the i-th range holds the keys that are > key i - 1 and <= key
+   * i. Keys are taken from the index, so the ranges are made of whole data blocks and there are
+   * fewer keys than asked for when the table has fewer blocks.
+   */
+  public List<Slice> approximateSplitKeys(int numParts) {
+    checkArgument(numParts > 0);
+    List<Slice> splitKeys = new ArrayList<>();
+    Cursor<BlockHandle> cursor = blockIndex.cursor();
+    cursor.seekToFirst();
+    int part = 1;
+    while (cursor.isValid() && part < numParts) {
+      long blockEnd = endOf(cursor.value());
+      // the cursor reuses its key buffer
+      Slice key = SliceUtils.copy(sliceFactory, cursor.key());
+      cursor.next();
+      if (!cursor.isValid()) {
+        // a split at the last key would leave an empty range
+        break;
+      }
+
+      // split after this block if its end is closer to the target than the end of the next one
+      long target = metaIndexOffset * part / numParts;
+      long nextBlockEnd = endOf(cursor.value());
+      if (blockEnd >= target || target - blockEnd <= nextBlockEnd - target) {
+        splitKeys.add(key);
+        part++;
+        // a large block may cover several targets
+        while (part < numParts && blockEnd >= metaIndexOffset * part / numParts) {
+          part++;
+        }
+      }
+    }
+    return splitKeys;
+  }
+
+  private static long endOf(BlockHandle handle) {
+    return handle.getOffset() + handle.getSize() + BlockTrailer.MAX_ENCODED_LENGTH;
+  }
+
   boolean mayExists(Slice key) {
     return getValueBlock(key) != null;
   }
 
   private BlockHandle getValueBlock(Slice key) {
+    if (fullFilter != null && !fullFilter.mayExist(key)) {
+      return null;
+    }
     Iterator<Entry<Slice, BlockHandle>> blockIt = blockIndex.iterator(key);
     if (!blockIt.hasNext()) {
       return null;
@@ -59,34 +178,487 @@ public class Table {
   }
 
   public Slice get(Slice key) throws IOException {
-    BlockHandle valueBlockHandle = getValueBlock(key);
-    if (valueBlockHandle == null) {
-      return null;
+    LookupScratch scratch = new LookupScratch();
+    return get(key, scratch) ? scratch.value() : null;
+  }
+
+  /**
+   * Looks up {@code key} without allocating iterators, entries or block handles; on a block
+   * cache hit the lookup does not allocate at all. Returns true if the key was found, in which
+   * case the value can be read from {@code scratch}.
+   */
+  public boolean get(Slice key, LookupScratch scratch) throws IOException {
+    if (fullFilter != null && !fullFilter.mayExist(key)) {
+      return false;
+    }
+    if (!blockIndex.seek(key, scratch)) {
+      return false;
     }
+    long blockOffset = scratch.blockOffset;
+    int blockSize = scratch.blockSize;
 
-    PrefixBlock<Slice> valueBlock = readBlock(sliceFactory, inputFile, valueBlockHandle, s -> s);
-    Iterator<Entry<Slice, Slice>> valueIt = valueBlock.iterator(key);
-    if (valueIt.hasNext()) {
-      Entry<Slice, Slice> next = valueIt.next();
-      if (sliceFactory.comparator().compare(key, next.getKey()) == 0) {
-        return next.getValue();
+    if (filterBlock != null && !filterBlock.mayExists(blockOffset, key)) {
+      return false;
+    }
+
+    PrefixBlock<Slice> valueBlock = readDataBlock(blockOffset, blockSize);
+    return valueBlock.get(key, scratch);
+  }
+
+  /**
+   * Looks up a batch of keys and returns their values in the order of {@code keys}, with null for
+   * keys that are not in the table.
+   *
+   * <p>The keys are sorted and resolved against the index in a single pass. Each data block is
+   * probed in the filter once for all of its keys, read at most once, and scanned forward once.
+   */
+  public List<Slice> multiGet(List<Slice> keys) throws IOException {
+    Slice[] values = new Slice[keys.size()];
+    for (BlockBatch batch : groupByBlock(keys)) {
+      batch.lookup(values);
+    }
+    return Arrays.asList(values);
+  }
+
+  public CompletableFuture<Slice> getAsync(Slice key) {
+    return getAsync(key, ReadExecutor.getDefault());
+  }
+
+  /**
+   * Asynchronous {@link #get(Slice)}; the index and block reads run on {@code executor}, as a
+   * single task that reads the index partition of the key, if the index is partitioned, and then
+   * its data block.
+   */
+  public CompletableFuture<Slice> getAsync(Slice key, ReadExecutor executor) {
+    return executor.submit(() -> get(key));
+  }
+
+  public CompletableFuture<List<Slice>> multiGetAsync(List<Slice> keys) {
+    return multiGetAsync(keys, ReadExecutor.getDefault());
+  }
+
+  /**
+   * Asynchronous {@link #multiGet(List)}. Keys are grouped by data block first, and every data
+   * block is then read and scanned as a separate task on {@code executor}. Grouping only touches
+   * the in memory index and filter and runs on the calling thread, unless the index is
+   * partitioned: then it reads the partitions the keys fall in, as one more task on {@code
+   * executor}.
+   */
+  public CompletableFuture<List<Slice>> multiGetAsync(List<Slice> keys, ReadExecutor executor) {
+    if (blockIndex instanceof PartitionedIndex) {
+      return executor.submit(() -> groupByBlock(keys))
+          .thenCompose(batches -> lookupAsync(keys.size(), batches, executor));
+    }
+    return lookupAsync(keys.size(), groupByBlock(keys), executor);
+  }
+
+  private CompletableFuture<List<Slice>> lookupAsync(
+      int numKeys, List<BlockBatch> batches, ReadExecutor executor) {
+    Slice[] values = new Slice[numKeys];
+    CompletableFuture<?>[] lookups = new CompletableFuture<?>[batches.size()];
+    for (int i = 0; i < lookups.length; i++) {
+      BlockBatch batch = batches.get(i);
+      lookups[i] = executor.submit(() -> {
+        batch.lookup(values);
+        return null;
+      });
+    }
+    return CompletableFuture.allOf(lookups).thenApply(ignored -> Arrays.asList(values));
+  }
+
+  // Sorts the keys and assigns runs of them to the data block that may contain them, dropping
+  // keys rejected by the filter.
+  private List<BlockBatch> groupByBlock(List<Slice> keys) {
+    Comparator<Slice> comparator = sliceFactory.comparator();
+    Integer[] order = new Integer[keys.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> comparator.compare(keys.get(a), keys.get(b)));
+
+    Slice[] sortedKeys = new Slice[order.length];
+    for (int i = 0; i < order.length; i++) {
+      sortedKeys[i] = keys.get(order[i]);
+    }
+    boolean[] matches = new boolean[order.length];
+    Arrays.fill(matches, true);
+    if (fullFilter != null) {
+      fullFilter.mayExist(sortedKeys, 0, sortedKeys.length, matches);
+    }
+
+    List<BlockBatch> batches = new ArrayList<>();
+    if (order.length == 0) {
+      return batches;
+    }
+
+    PeekingIterator<Entry<Slice, BlockHandle>> indexIt =
+        Iterators.peekingIterator(blockIndex.iterator(sortedKeys[0]));
+    int start = 0;
+    while (start < sortedKeys.length) {
+      // index keys are >= every key in their block
+      while (indexIt.hasNext()
+          && comparator.compare(indexIt.peek().getKey(), sortedKeys[start]) < 0) {
+        indexIt.next();
+      }
+      if (!indexIt.hasNext()) {
+        // past the last block
+        break;
+      }
+
+      Entry<Slice, BlockHandle> indexEntry = indexIt.peek();
+      int end = start + 1;
+      while (end < sortedKeys.length
+          && comparator.compare(sortedKeys[end], indexEntry.getKey()) <= 0) {
+        end++;
+      }
+
+      BlockHandle blockHandle = indexEntry.getValue();
+      if (filterBlock != null) {
+        filterBlock.mayExist(blockHandle.getOffset(), sortedKeys, start, end, matches);
+      }
+
+      int matched = 0;
+      for (int i = start; i < end; i++) {
+        if (matches[i]) {
+          matched++;
+        }
+      }
+      if (matched > 0) {
+        Slice[] batchKeys = new Slice[matched];
+        int[] positions = new int[matched];
+        int j = 0;
+        for (int i = start; i < end; i++) {
+          if (matches[i]) {
+            batchKeys[j] = sortedKeys[i];
+            positions[j] = order[i];
+            j++;
+          }
+        }
+        batches.add(new BlockBatch(blockHandle, batchKeys, positions));
+      }
+      start = end;
+    }
+    return batches;
+  }
+
+  // sorted keys that all map to the same data block
+  private final class BlockBatch {
+
+    private final BlockHandle blockHandle;
+    private final Slice[] keys;
+    // position of each key in the caller's list
+    private final int[] positions;
+
+    private BlockBatch(BlockHandle blockHandle, Slice[] keys, int[] positions) {
+      this.blockHandle = blockHandle;
+      this.keys = keys;
+      this.positions = positions;
+    }
+
+    // reads the block once and resolves all keys with a single forward scan
+    void lookup(Slice[] values) throws IOException {
+      Comparator<Slice> comparator = sliceFactory.comparator();
+      PrefixBlock<Slice> block = readDataBlock(blockHandle);
+      PeekingIterator<Entry<Slice, Slice>> it =
+          Iterators.peekingIterator(block.iterator(keys[0]));
+      for (int i = 0; i < keys.length; i++) {
+        while (it.hasNext() && comparator.compare(it.peek().getKey(), keys[i]) < 0) {
+          it.next();
+        }
+        if (!it.hasNext()) {
+          return;
+        }
+        Entry<Slice, Slice> entry = it.peek();
+        if (comparator.compare(entry.getKey(), keys[i]) == 0) {
+          values[positions[i]] = entry.getValue();
+        }
       }
     }
-    return null;
   }
 
   public Iterator<Entry<Slice, Slice>> iterator(Slice lowerBound) {
-    return Iterators.concat(
-        Iterators.transform(
-            blockIndex.iterator(lowerBound),
-            e -> getBlock.apply(e.getValue()).iterator(lowerBound)));
+    return iterator(lowerBound, true, null, false);
   }
 
   public Iterator<Map.Entry<Slice, Slice>> iterator() {
-    return Iterators.concat(
-        Iterators.transform(
-            blockIndex.iterator(),
-            e -> getBlock.apply(e.getValue()).iterator()));
+    return iterator(null, false, null, false);
+  }
+
+  /**
+   * Returns the entries with lowerBound <= key < upperBound in ascending key order.
+   */
+  public Iterator<Entry<Slice, Slice>> iterator(Slice lowerBound, Slice upperBound) {
+    return iterator(lowerBound, true, upperBound, false);
+  }
+
+  /**
+   * Returns the entries between the bounds in ascending key order; a null bound is unbounded.
+   *
+   * <p>The scan stops decoding at the first key past upperBound, and it never reads a data block
+   * whose keys all lie above upperBound: once the index key of a block is >= upperBound, every
+   * later block is out of range.
+   */
+  public Iterator<Entry<Slice, Slice>> iterator(
+      Slice lowerBound, boolean lowerInclusive, Slice upperBound, boolean upperInclusive) {
+    return new RangeIterator(lowerBound, lowerInclusive, upperBound, upperInclusive);
+  }
+
+  /**
+   * Returns the entries whose key starts with {@code prefix} in ascending key order.
+   *
+   * <p>If the table was written with the same {@link Options#prefixExtractor} as it was opened
+   * with, and {@code prefix} is a whole extracted prefix, the filter is checked first and an
+   * absent prefix returns an empty iterator without reading any data block.
+   */
+  public Iterator<Entry<Slice, Slice>> prefixIterator(Slice prefix) {
+    if (!prefixMayExist(prefix)) {
+      return Collections.emptyIterator();
+    }
+    return iterator(prefix, true, prefixSuccessor(prefix), false);
+  }
+
+  private boolean prefixMayExist(Slice prefix) {
+    if (prefixExtractor == null
+        || !prefixExtractor.inDomain(prefix)
+        || prefixExtractor.transform(prefix).len() != prefix.len()) {
+      return true;
+    }
+    if (fullFilter != null) {
+      return fullFilter.mayExist(prefix);
+    }
+    // The first key >= prefix is in this block, and it has the prefix if any key does. The
+    // builder adds a prefix to the filter with the first key that has it.
+    Iterator<Entry<Slice, BlockHandle>> blockIt = blockIndex.iterator(prefix);
+    if (!blockIt.hasNext()) {
+      return false;
+    }
+    return filterBlock.mayExists(blockIt.next().getValue().getOffset(), prefix);
+  }
+
+  // smallest key greater than all keys starting with prefix, or null if there is none
+  private Slice prefixSuccessor(Slice prefix) {
+    for (int i = prefix.len() - 1; i >= 0; i--) {
+      if (prefix.getUnsignedByte(i) != 0xff) {
+        byte[] successor = new byte[i + 1];
+        prefix.newReader().getBytes(successor, 0, i);
+        successor[i] = (byte) (prefix.getUnsignedByte(i) + 1);
+        return sliceFactory.wrap(successor, 0, successor.length);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns a sequential stream of the entries with lowerBound <= key < upperBound; a null bound
+   * is unbounded. Call {@link Stream#parallel()} to process the range on the fork join pool,
+   * which then splits it at data block boundaries.
+   */
+  public Stream<Entry<Slice, Slice>> stream(Slice lowerBound, Slice upperBound) {
+    return StreamSupport.stream(spliterator(lowerBound, upperBound), false);
+  }
+
+  /**
+   * Returns a {@link Spliterator#SORTED} spliterator over the entries with lowerBound <= key <
+   * upperBound. Only the index is read here; data blocks are read as the spliterator and the
+   * ones split off from it reach them.
+   */
+  public Spliterator<Entry<Slice, Slice>> spliterator(Slice lowerBound, Slice upperBound) {
+    Comparator<Slice> comparator = sliceFactory.comparator();
+    List<BlockHandle> blocks = new ArrayList<>();
+    Iterator<Entry<Slice, BlockHandle>> indexIt =
+        lowerBound == null ? blockIndex.iterator() : blockIndex.iterator(lowerBound);
+    while (indexIt.hasNext()) {
+      Entry<Slice, BlockHandle> indexEntry = indexIt.next();
+      blocks.add(indexEntry.getValue());
+      if (upperBound != null && comparator.compare(indexEntry.getKey(), upperBound) >= 0) {
+        break;
+      }
+    }
+    return new TableSpliterator(sliceFactory, getBlock, blocks, lowerBound, upperBound);
+  }
+
+  private final class RangeIterator extends AbstractIterator<Entry<Slice, Slice>> {
+
+    private final Comparator<Slice> comparator = sliceFactory.comparator();
+    private final Slice lowerBound;
+    private final boolean lowerInclusive;
+    private final Slice upperBound;
+    private final boolean upperInclusive;
+
+    private final Iterator<Entry<Slice, BlockHandle>> indexIt;
+    private Cursor<Slice> blockCursor = null;
+    private boolean firstBlock = true;
+    private boolean lastBlock = false;
+    // the returned key shares the cursor buffer, so only advance when the next entry is pulled
+    private boolean advance = false;
+
+    private RangeIterator(
+        Slice lowerBound, boolean lowerInclusive, Slice upperBound, boolean upperInclusive) {
+      this.lowerBound = lowerBound;
+      this.lowerInclusive = lowerInclusive;
+      this.upperBound = upperBound;
+      this.upperInclusive = upperInclusive;
+      this.indexIt = lowerBound == null ? blockIndex.iterator() : blockIndex.iterator(lowerBound);
+    }
+
+    @Override
+    protected Entry<Slice, Slice> computeNext() {
+      if (advance) {
+        blockCursor.next();
+        advance = false;
+      }
+      while (blockCursor == null || !blockCursor.isValid()) {
+        if (lastBlock || !indexIt.hasNext()) {
+          return endOfData();
+        }
+        Entry<Slice, BlockHandle> indexEntry = indexIt.next();
+        if (upperBound != null && comparator.compare(indexEntry.getKey(), upperBound) >= 0) {
+          // later blocks only have keys > the index key of this one
+          lastBlock = true;
+        }
+        blockCursor = getBlock.apply(indexEntry.getValue()).cursor();
+        if (firstBlock && lowerBound != null) {
+          blockCursor.seek(lowerBound);
+          if (!lowerInclusive
+              && blockCursor.isValid()
+              && comparator.compare(blockCursor.key(), lowerBound) == 0) {
+            blockCursor.next();
+          }
+        } else {
+          blockCursor.seekToFirst();
+        }
+        firstBlock = false;
+      }
+
+      Slice key = blockCursor.key();
+      if (upperBound != null) {
+        int cmp = comparator.compare(key, upperBound);
+        if (cmp > 0 || (cmp == 0 && !upperInclusive)) {
+          return endOfData();
+        }
+      }
+      advance = true;
+      return new SimpleImmutableEntry<>(key, blockCursor.value());
+    }
+  }
+
+  /**
+   * Returns an unpositioned cursor over the table. Data blocks are read as the cursor reaches
+   * them, and values are only sliced out of a block when {@link Cursor#value()} is called.
+   */
+  public Cursor<Slice> cursor() {
+    return new TwoLevelCursor<>(blockIndex.cursor(), handle -> getBlock.apply(handle).cursor());
+  }
+
+  /**
+   * Returns the entries in descending key order, starting at the last one.
+   */
+  public Iterator<Entry<Slice, Slice>> reverseIterator() {
+    Cursor<Slice> cursor = cursor();
+    cursor.seekToLast();
+    return new ReverseIterator(cursor);
+  }
+
+  /**
+   * Returns the entries with a key <= upperBound in descending key order. Blocks are read
+   * backwards through the index, so this costs about as much as the same forward scan.
+   */
+  public Iterator<Entry<Slice, Slice>> reverseIterator(Slice upperBound) {
+    Cursor<Slice> cursor = cursor();
+    cursor.seek(upperBound);
+    if (!cursor.isValid()) {
+      // every key is < upperBound
+      cursor.seekToLast();
+    } else if (sliceFactory.comparator().compare(cursor.key(), upperBound) > 0) {
+      cursor.prev();
+    }
+    return new ReverseIterator(cursor);
+  }
+
+  private static final class ReverseIterator extends AbstractIterator<Entry<Slice, Slice>> {
+
+    private final Cursor<Slice> cursor;
+    private boolean first = true;
+
+    private ReverseIterator(Cursor<Slice> cursor) {
+      this.cursor = cursor;
+    }
+
+    @Override
+    protected Entry<Slice, Slice> computeNext() {
+      if (!first && cursor.isValid()) {
+        cursor.prev();
+      }
+      first = false;
+      if (!cursor.isValid()) {
+        return endOfData();
+      }
+      return new SimpleImmutableEntry<>(cursor.key(), cursor.value());
+    }
+  }
+
+  public CloseableIterator<Entry<Slice, Slice>> readaheadIterator(Slice lowerBound) {
+    return readaheadIterator(lowerBound, ReadExecutor.getDefault());
+  }
+
+  /**
+   * Like {@link #iterator(Slice)}, but prefetches upcoming data blocks on {@code executor} and
+   * merges reads of adjacent blocks, so long scans are not bound by one read round trip per
+   * block. Prefetched blocks bypass the block cache. A null lowerBound scans the whole table.
+   *
+   * <p>Up to {@link ReadaheadIterator#MAX_WINDOW} blocks can be in flight; close the iterator
+   * when abandoning a scan early so that reads which have not started yet are dropped.
+   */
+  public CloseableIterator<Entry<Slice, Slice>> readaheadIterator(
+      Slice lowerBound, ReadExecutor executor) {
+    Iterator<Entry<Slice, BlockHandle>> indexIt =
+        lowerBound == null ? blockIndex.iterator() : blockIndex.iterator(lowerBound);
+    return new ReadaheadIterator(
+        sliceFactory,
+        inputFile,
+        executor,
+        Iterators.transform(indexIt, Entry::getValue),
+        lowerBound,
+        compressionDict,
+        verifyChecksums);
+  }
+
+  // https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/table/table.cc#L153
+  private PrefixBlock<Slice> readDataBlock(BlockHandle blockHandle) throws IOException {
+    return readDataBlock(blockHandle.getOffset(), blockHandle.getSize());
+  }
+
+  private PrefixBlock<Slice> readDataBlock(long blockOffset, int blockSize) throws IOException {
+    if (blockCache == null) {
+      return readBlock(
+          sliceFactory, inputFile, new BlockHandle(blockOffset, blockSize), s -> s,
+          compressionDict, verifyChecksums);
+    }
+
+    PrefixBlock<Slice> block = blockCache.get(cacheId, blockOffset);
+    if (block == null) {
+      block = readBlock(
+          sliceFactory, inputFile, new BlockHandle(blockOffset, blockSize), s -> s,
+          compressionDict, verifyChecksums);
+      blockCache.put(cacheId, blockOffset, block, block.size());
+    }
+    return block;
+  }
+
+  private PrefixBlock<BlockHandle> readIndexPartition(long blockOffset, int blockSize)
+      throws IOException {
+    if (blockCache == null) {
+      return readIndexBlock(
+          sliceFactory, inputFile, new BlockHandle(blockOffset, blockSize), verifyChecksums);
+    }
+
+    PrefixBlock<BlockHandle> block = blockCache.get(cacheId, blockOffset);
+    if (block == null) {
+      block = readIndexBlock(
+          sliceFactory, inputFile, new BlockHandle(blockOffset, blockSize), verifyChecksums);
+      blockCache.put(cacheId, blockOffset, block, block.size());
+    }
+    return block;
   }
 
   public static Table openWithoutFilter(
@@ -100,87 +672,232 @@ public class Table {
       File file,
       FilterPolicy.Reader filterPolicy,
       Slice.Factory sliceFactory) throws IOException {
+    return open(file, filterPolicy, sliceFactory, new Options());
+  }
+
+  public static Table open(
+      File file,
+      FilterPolicy.Reader filterPolicy,
+      Slice.Factory sliceFactory,
+      Options options) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    return open(
+        filterPolicy,
+        new FileChannelReadOnlyFile(randomAccessFile.getChannel()),
+        sliceFactory,
+        options);
+  }
+
+  /**
+   * Opens the table through a read only memory mapping. Blocks of uncompressed tables are then
+   * served as views into the mapping, and the OS page cache does the caching.
+   */
+  public static Table openMapped(
+      File file,
+      FilterPolicy.Reader filterPolicy,
+      Slice.Factory sliceFactory) throws IOException {
+    return openMapped(file, filterPolicy, sliceFactory, new Options());
+  }
+
+  public static Table openMapped(
+      File file,
+      FilterPolicy.Reader filterPolicy,
+      Slice.Factory sliceFactory,
+      Options options) throws IOException {
     RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
-    return open(filterPolicy, new FileChannelReadOnlyFile(randomAccessFile.getChannel()), sliceFactory);
+    return open(
+        filterPolicy,
+        new MappedReadOnlyFile(randomAccessFile.getChannel()),
+        sliceFactory,
+        options);
   }
 
   public static Table open(
       FilterPolicy.Reader filterPolicy,
       ReadOnlyFile inputFile,
       Slice.Factory sliceFactory) throws IOException {
+    return open(filterPolicy, inputFile, sliceFactory, new Options());
+  }
+
+  public static Table open(
+      FilterPolicy.Reader filterPolicy,
+      ReadOnlyFile inputFile,
+      Slice.Factory sliceFactory,
+      Options options) throws IOException {
     Footer footer = readFooter(sliceFactory, inputFile);
 
-    PrefixBlock<BlockHandle> blockIndex = readBlock(
+    // For a two level index this is the top level block.
+    PrefixBlock<BlockHandle> indexBlock = readIndexBlock(
+        sliceFactory, inputFile, footer.getIndex(), options.getVerifyChecksums());
+
+    PrefixBlock<Slice> metaIndex = readBlock(
         sliceFactory,
-        inputFile, footer.getIndex(),
-        valueSlice -> BlockHandle.decode(valueSlice.newReader()));
+        inputFile,
+        footer.getMetaIndex(),
+        s -> s,
+        null,
+        options.getVerifyChecksums()
+    );
 
-    FilterBlock filterBlock;
+    IndexType indexType = IndexType.BINARY_SEARCH;
+    Slice indexTypeValue = findMetaIndexEntry(metaIndex, IndexType.META_KEY);
+    if (indexTypeValue != null) {
+      indexType = IndexType.decode(indexTypeValue.getByte(0));
+    }
+
+    FilterBlock filterBlock = null;
+    FullFilterBlock fullFilter = null;
     if (filterPolicy != null) {
+      fullFilter = readFullFilter(
+          sliceFactory, filterPolicy, inputFile, metaIndex, options.getVerifyChecksums());
+      if (fullFilter == null) {
+        // https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/table/table.cc#L82
+        filterBlock = readFilterBlock(
+            sliceFactory, filterPolicy, inputFile, metaIndex, options.getVerifyChecksums());
+      }
+    }
 
-      // https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/table/table.cc#L82
-      filterBlock = readFilterBlock(sliceFactory, filterPolicy, inputFile, footer.getMetaIndex());
-    } else {
-      filterBlock = null;
+    // prefixes can only be looked up in a filter written with the same extractor
+    PrefixExtractor prefixExtractor = null;
+    if ((fullFilter != null || filterBlock != null) && options.getPrefixExtractor() != null) {
+      Slice name = findMetaIndexEntry(metaIndex, TableBuilder.PREFIX_EXTRACTOR_META_KEY);
+      if (name != null && options.getPrefixExtractor().name().equals(
+          StandardCharsets.UTF_8.decode(name.asByteBuffer()).toString())) {
+        prefixExtractor = options.getPrefixExtractor();
+      }
+    }
+
+    // loaded once, every data block of the table is decompressed with it
+    CompressionDict compressionDict = null;
+    Slice dictHandleValue = findMetaIndexEntry(metaIndex, CompressionDict.META_KEY);
+    if (dictHandleValue != null) {
+      BlockHandle dictHandle = BlockHandle.decode(dictHandleValue.newReader());
+      ByteBuffer dictBuf = readRawBlock(inputFile, dictHandle, options.getVerifyChecksums());
+      byte[] dictionary = new byte[dictBuf.remaining()];
+      dictBuf.get(dictionary);
+      compressionDict = new CompressionDict(dictionary);
     }
 
     return new Table(
         inputFile,
         sliceFactory,
-        blockIndex,
-        filterBlock);
+        footer.getMetaIndex().getOffset(),
+        indexBlock,
+        indexType,
+        options.getFlatIndex(),
+        filterBlock,
+        fullFilter,
+        prefixExtractor,
+        compressionDict,
+        options.getVerifyChecksums(),
+        options.getBlockCache());
   }
 
   static FilterBlock readFilterBlock(
       Slice.Factory sliceFactory,
       FilterPolicy.Reader filterPolicy,
       ReadOnlyFile file,
-      BlockHandle metaIndexBlockHandle)
+      PrefixBlock<Slice> metaIndex,
+      boolean verifyChecksums)
       throws IOException {
-    PrefixBlock<Slice> metaIndex = readBlock(
-        sliceFactory,
-        file,
-        metaIndexBlockHandle,
-        s -> s
-    );
+    Slice data = findMetaIndexEntry(metaIndex, "filter." + filterPolicy.name());
+    if (data == null) {
+      return null;
+    }
 
-    byte[] filterKeyBytes = ("filter." + filterPolicy.name()).getBytes(StandardCharsets.UTF_8);
-    Slice filterKeySlice = sliceFactory.wrap(filterKeyBytes, 0, filterKeyBytes.length);
+    BlockHandle filterBlockHandle = BlockHandle.decode(data.newReader());
 
-    Iterator<Entry<Slice, Slice>> entries =
-        metaIndex.iterator(sliceFactory.wrap(filterKeyBytes, 0, filterKeyBytes.length));
-    if (entries.hasNext()) {
-      Entry<Slice, Slice> next = entries.next();
-      if (sliceFactory.comparator().compare(filterKeySlice, next.getKey()) == 0) {
-        Slice data = next.getValue();
+    ByteBuffer blockBuf = readRawBlock(file, filterBlockHandle, verifyChecksums);
 
-        BlockHandle filterBlockHandle = BlockHandle.decode(data.newReader());
+    Slice filterBlockData = sliceFactory.wrap(blockBuf);
+
+    return FilterBlock.newInstance(filterBlockData, filterPolicy);
+  }
+
+  static FullFilterBlock readFullFilter(
+      Slice.Factory sliceFactory,
+      FilterPolicy.Reader filterPolicy,
+      ReadOnlyFile file,
+      PrefixBlock<Slice> metaIndex,
+      boolean verifyChecksums)
+      throws IOException {
+    Slice data = findMetaIndexEntry(metaIndex, FullFilterBlock.META_PREFIX + filterPolicy.name());
+    if (data == null) {
+      return null;
+    }
+
+    BlockHandle filterHandle = BlockHandle.decode(data.newReader());
+    ByteBuffer blockBuf = readRawBlock(file, filterHandle, verifyChecksums);
+    return new FullFilterBlock(sliceFactory.wrap(blockBuf), filterPolicy);
+  }
 
-        ByteBuffer blockBuf = file.readFully(filterBlockHandle.getOffset(), filterBlockHandle.getSize());
+  // reads the contents of an uncompressed meta block
+  private static ByteBuffer readRawBlock(
+      ReadOnlyFile file, BlockHandle handle, boolean verifyChecksums) throws IOException {
+    if (!verifyChecksums) {
+      return file.readFully(handle.getOffset(), handle.getSize());
+    }
+    ByteBuffer dataAndTrailer =
+        file.readFully(handle.getOffset(), handle.getSize() + BlockTrailer.MAX_ENCODED_LENGTH);
+    BlockTrailer.verifyChecksum(dataAndTrailer, handle.getSize());
+    return dataAndTrailer.limit(handle.getSize());
+  }
 
-        Slice filterBlockData = sliceFactory.wrap(blockBuf);
+  // Returns the value stored under name in the metaindex, or null. Metaindex keys are in
+  // bytewise order whatever the table's comparator is, so scan the few entries instead of seeking.
+  static Slice findMetaIndexEntry(PrefixBlock<Slice> metaIndex, String name) {
+    byte[] keyBytes = name.getBytes(StandardCharsets.UTF_8);
 
-        return FilterBlock.newInstance(filterBlockData, filterPolicy);
+    Iterator<Entry<Slice, Slice>> entries = metaIndex.iterator();
+    while (entries.hasNext()) {
+      Entry<Slice, Slice> next = entries.next();
+      if (SliceUtils.compare(keyBytes, keyBytes.length, next.getKey()) == 0) {
+        return next.getValue();
       }
     }
     return null;
   }
 
+  static PrefixBlock<BlockHandle> readIndexBlock(
+      Slice.Factory sliceFactory, ReadOnlyFile file, BlockHandle blockHandle,
+      boolean verifyChecksums) throws IOException {
+    return readBlock(
+        sliceFactory,
+        file,
+        blockHandle,
+        valueSlice -> BlockHandle.decode(valueSlice.newReader()),
+        null,
+        verifyChecksums);
+  }
+
   static <V> PrefixBlock<V> readBlock(
       Slice.Factory sliceFactory, ReadOnlyFile file, BlockHandle blockHandle,
-      Function<Slice, V> valueDecoder) throws IOException {
+      Function<Slice, V> valueDecoder, CompressionDict dict, boolean verifyChecksums)
+      throws IOException {
 
     // read block data + trailer
     ByteBuffer dataAndTrailer = file.readFully(
         blockHandle.getOffset(),
         blockHandle.getSize() + BlockTrailer.MAX_ENCODED_LENGTH);
 
+    return decodeBlock(
+        sliceFactory, dataAndTrailer, blockHandle.getSize(), valueDecoder, dict,
+        verifyChecksums);
+  }
+
+  // dataAndTrailer holds the block contents at position 0 followed by its trailer
+  static <V> PrefixBlock<V> decodeBlock(
+      Slice.Factory sliceFactory, ByteBuffer dataAndTrailer, int blockSize,
+      Function<Slice, V> valueDecoder, CompressionDict dict, boolean verifyChecksums) {
+    if (verifyChecksums) {
+      BlockTrailer.verifyChecksum(dataAndTrailer, blockSize);
+    }
     BlockTrailer blockTrailer = BlockTrailer.decode(
-        SliceUtils.duplicate(dataAndTrailer).position(blockHandle.getSize()));
+        SliceUtils.duplicate(dataAndTrailer).position(blockSize));
 
     Compressor compressor = blockTrailer.getCompressionType().getCompressor();
-    ByteBuffer raw = dataAndTrailer.limit(blockHandle.getSize());
-    ByteBuffer uncompressed = compressor.uncompress(raw);
+    ByteBuffer raw = dataAndTrailer.limit(blockSize);
+    ByteBuffer uncompressed = compressor.uncompress(raw, dict);
 
     Slice dataSlice = sliceFactory.wrap(uncompressed);
 
@@ -188,7 +905,7 @@ public class Table {
   }
 
   static Footer readFooter(Slice.Factory sliceFactory, ReadOnlyFile file) throws IOException {
-    int size = Ints.checkedCast(file.size());
+    long size = file.size();
     long footerOffset = size - Footer.MAX_ENCODED_LENGTH;
     Slice slice = sliceFactory.wrap(
         file.readFully(footerOffset, Footer.MAX_ENCODED_LENGTH));
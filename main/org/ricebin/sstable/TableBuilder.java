@@ -1,57 +1,163 @@
 package org.ricebin.sstable;
 
-import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.ricebin.slice.Slice;
 
 public class TableBuilder {
 
+  // metaindex entry holding the name of the prefix extractor whose prefixes are in the filter
+  static final String PREFIX_EXTRACTOR_META_KEY = "prefix.extractor";
+
+  // data blocks sampled to train a compression dictionary, per byte of dictionary
+  static final int DICT_SAMPLE_RATIO = 100;
+
+  // data blocks queued for compression or writing in parallel mode, per compression thread
+  static final int BLOCKS_IN_FLIGHT_PER_THREAD = 4;
 
   private final Slice.Factory sliceFactory;
-  private final FileChannel fileChannel;
+  private final WritableFile file;
   private final CompressionType compressionType;
 
   private final PrefixBlockBuilder dataBlockBuilder;
   private final PrefixBlockBuilder indexBlockBuilder;
+  // non null when writing a two level index, indexBlockBuilder then builds the partitions
+  private final PrefixBlockBuilder topLevelIndexBuilder;
+  // at most one of them is non null, depending on the filter options
+  private final FilterBlockBuilder filterBlockBuilder;
+  private final FullFilterBlockBuilder fullFilterBuilder;
+  // null unless there is a filter to add prefixes to
+  private final PrefixExtractor prefixExtractor;
 
   private final AtomicBoolean finished = new AtomicBoolean(false);
 
   private Slice prevKey;
+  private long numEntries = 0;
   private BlockHandle pendingIndexEntry = null;
+  // key of the last entry of the current index partition
+  private Slice lastIndexKey = null;
+  private Slice lastPrefix = null;
+  // reused for every compressed block, blocks are written before the next one is compressed
+  private byte[] compressionBuffer = new byte[0];
+
+  private final int maxDictBytes;
+  // Non null while the first data blocks are held back to train the compression dictionary.
+  // Their keys are added to the filter once they are written.
+  private List<DataBlock> bufferedBlocks;
+  private int bufferedBytes = 0;
+  private CompressionDict compressionDict = null;
+
+  // Non null in parallel mode: data blocks are compressed and checksummed on compressionPool, and
+  // the writer thread writes them in order, adds their keys to the filter and their handles to the
+  // index. The caller only builds blocks, and waits once blocksInFlight blocks are queued.
+  private final ExecutorService compressionPool;
+  private final ExecutorService writer;
+  private final Semaphore blocksInFlight;
+  private CompletableFuture<Void> lastWrite = CompletableFuture.completedFuture(null);
+  // last key of the block of pendingIndexEntry, for blocks written by writeDataBlock
+  private Slice pendingLastKey;
+
+  // While data blocks are written after they are finished, the first key of the current block
+  // and the keys and prefixes it adds to the filter, so the block is not decoded again.
+  private Slice blockFirstKey;
+  private List<Slice> blockFilterKeys = new ArrayList<>();
 
   TableBuilder(Slice.Factory sliceFactory,
-      FileChannel fileChannel, CompressionType compressionType) {
-    checkArgument(compressionType == CompressionType.NONE);
+      FileChannel fileChannel, CompressionType compressionType) throws IOException {
+    this(sliceFactory, fileChannel, compressionType, new Options());
+  }
+
+  TableBuilder(Slice.Factory sliceFactory,
+      FileChannel fileChannel, CompressionType compressionType, Options options)
+      throws IOException {
     this.sliceFactory = sliceFactory;
-    this.fileChannel = fileChannel;
+    this.file = new WritableFile(
+        fileChannel, options.getWriteBufferSize(), options.getBytesPerSync());
     this.compressionType = compressionType;
     this.prevKey = sliceFactory.empty();
 
-    this.dataBlockBuilder = new PrefixBlockBuilder(sliceFactory);
+    this.dataBlockBuilder =
+        new PrefixBlockBuilder(sliceFactory, options.getDataBlockHashIndex());
     this.indexBlockBuilder = new PrefixBlockBuilder(sliceFactory);
+    if (options.getIndexType() == IndexType.TWO_LEVEL_INDEX_SEARCH) {
+      this.topLevelIndexBuilder = new PrefixBlockBuilder(sliceFactory);
+    } else {
+      this.topLevelIndexBuilder = null;
+    }
+    if (options.getFilterPolicy() != null && options.getFullFilter()) {
+      this.filterBlockBuilder = null;
+      this.fullFilterBuilder = new FullFilterBlockBuilder(sliceFactory, options.getFilterPolicy());
+    } else if (options.getFilterPolicy() != null) {
+      this.filterBlockBuilder = new FilterBlockBuilder(sliceFactory, options.getFilterPolicy());
+      this.filterBlockBuilder.startBlock(0);
+      this.fullFilterBuilder = null;
+    } else {
+      this.filterBlockBuilder = null;
+      this.fullFilterBuilder = null;
+    }
+    this.prefixExtractor =
+        options.getFilterPolicy() != null ? options.getPrefixExtractor() : null;
+
+    if (compressionType == CompressionType.ZSTD && options.getMaxDictBytes() > 0) {
+      this.maxDictBytes = options.getMaxDictBytes();
+      this.bufferedBlocks = new ArrayList<>();
+    } else {
+      this.maxDictBytes = 0;
+    }
+
+    int threads = options.getParallelCompression();
+    if (threads > 1) {
+      this.compressionPool = Executors.newFixedThreadPool(threads,
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("sstable-compress-%d").build());
+      this.writer = Executors.newSingleThreadExecutor(
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("sstable-write-%d").build());
+      this.blocksInFlight = new Semaphore(threads * BLOCKS_IN_FLIGHT_PER_THREAD);
+    } else {
+      this.compressionPool = null;
+      this.writer = null;
+      this.blocksInFlight = null;
+    }
   }
 
   public void add(Slice key, Slice value) throws IOException {
-    // do not allow duplicate key
-    checkState(sliceFactory.comparator().compare(key, prevKey) > 0);
+    // do not allow duplicate key, the first key can be anything in the comparator's order
+    checkState(numEntries == 0 || sliceFactory.comparator().compare(key, prevKey) > 0);
 
-    if (pendingIndexEntry != null) {
+    // in parallel mode the writer thread owns the index
+    if (writer == null && pendingIndexEntry != null) {
       checkState(dataBlockBuilder.isEmpty());
 
-      // TODO(ricebin): optimize with findShortestSeparator
-      // keyComparator.findShortestSeparator(prevKey, key);
-
-      Slice handle = BlockHandle.encode(pendingIndexEntry, sliceFactory);
-      indexBlockBuilder.add(prevKey, handle);
+      // any key in [last key of the block, first key of the next one) finds the block, so the
+      // index can store a shorter one
+      addIndexEntry(
+          sliceFactory.comparator().findShortestSeparator(prevKey, key), pendingIndexEntry);
       pendingIndexEntry = null;
     }
 
+    if (dataBlockBuilder.isEmpty()) {
+      blockFirstKey = key;
+    }
+    addToFilter(key);
+
     prevKey = key;
+    numEntries++;
     dataBlockBuilder.add(key, value);
 
     int estimatedBlockSize = dataBlockBuilder.getCurrentSizeEstimate();
@@ -60,26 +166,153 @@ public class TableBuilder {
     }
   }
 
+  private void addToFilter(Slice key) {
+    addFilterKey(key);
+    if (prefixExtractor != null && prefixExtractor.inDomain(key)) {
+      Slice prefix = prefixExtractor.transform(key);
+      // keys are sorted, so a prefix only has to be added once
+      if (lastPrefix == null || sliceFactory.comparator().compare(prefix, lastPrefix) != 0) {
+        addFilterKey(prefix);
+        lastPrefix = SliceUtils.copy(sliceFactory, prefix);
+      }
+    }
+  }
+
+  private void addFilterKey(Slice key) {
+    if (bufferedBlocks != null || writer != null) {
+      // added when the block is written
+      if (filterBlockBuilder != null || fullFilterBuilder != null) {
+        blockFilterKeys.add(key);
+      }
+    } else if (filterBlockBuilder != null) {
+      filterBlockBuilder.addKey(key);
+    } else if (fullFilterBuilder != null) {
+      fullFilterBuilder.addKey(key);
+    }
+  }
+
+  private void addFilterKeys(List<Slice> keys) {
+    for (Slice key : keys) {
+      if (filterBlockBuilder != null) {
+        filterBlockBuilder.addKey(key);
+      } else {
+        fullFilterBuilder.addKey(key);
+      }
+    }
+  }
+
+  private void addIndexEntry(Slice key, BlockHandle handle) {
+    indexBlockBuilder.add(key, BlockHandle.encode(handle, sliceFactory));
+    lastIndexKey = key;
+  }
+
+  // Called right after a data block is written: a full partition goes to the file before the
+  // filter learns where the next data block starts, so the filter is given its real offset.
+  private void startDataBlock() throws IOException {
+    if (topLevelIndexBuilder != null
+        && indexBlockBuilder.getCurrentSizeEstimate() >= PrefixBlockBuilder.BLOCK_SIZE) {
+      flushIndexPartition(lastIndexKey);
+    }
+    if (filterBlockBuilder != null) {
+      filterBlockBuilder.startBlock(file.position());
+    }
+  }
+
+  // writes the current index partition and points the top level index at it
+  private void flushIndexPartition(Slice lastKey) throws IOException {
+    if (indexBlockBuilder.isEmpty()) {
+      return;
+    }
+    BlockHandle partitionHandle = writeBlock(indexBlockBuilder);
+    topLevelIndexBuilder.add(lastKey, BlockHandle.encode(partitionHandle, sliceFactory));
+  }
+
   private BlockHandle writeBlock(BlockBuilder blockBuilder) throws IOException {
     // close the block
-    ByteBuffer blockBuffer = blockBuilder.finish().asByteBuffer();
-    ByteBuffer compressed = compressionType.getCompressor().compress(blockBuffer);
+    BlockHandle handle = writeBlock(blockBuilder.finish().asByteBuffer(), null);
+    blockBuilder.reset();
+    return handle;
+  }
+
+  private BlockHandle writeBlock(ByteBuffer blockBuffer, CompressionDict dict)
+      throws IOException {
+    if (compressionType != CompressionType.NONE) {
+      int maxLength = compressionType.getCompressor().maxCompressedLength(blockBuffer.remaining());
+      if (compressionBuffer.length < maxLength) {
+        compressionBuffer = new byte[maxLength];
+      }
+    }
+    return writeRawBlock(compressBlock(blockBuffer, dict, compressionBuffer));
+  }
+
+  // a finished data block that is written later, with what the writer needs to add it to the
+  // filter and the index
+  private static final class DataBlock {
+
+    private final byte[] contents;
+    private final Slice firstKey;
+    private final Slice lastKey;
+    private final List<Slice> filterKeys;
+
+    private DataBlock(byte[] contents, Slice firstKey, Slice lastKey, List<Slice> filterKeys) {
+      this.contents = contents;
+      this.firstKey = firstKey;
+      this.lastKey = lastKey;
+      this.filterKeys = filterKeys;
+    }
+  }
+
+  // the contents of a block as written to the file, with the checksum of its trailer
+  private static final class CompressedBlock {
+
+    private final ByteBuffer contents;
+    private final CompressionType type;
+    private final int crc32c;
+
+    private CompressedBlock(ByteBuffer contents, CompressionType type) {
+      this.contents = contents;
+      this.type = type;
+      this.crc32c = BlockTrailer.checksum(contents, type);
+    }
+  }
 
-    // TODO(ricebin): compress the block
+  // compresses into output, which must fit maxCompressedLength, or a new array if output is null
+  private CompressedBlock compressBlock(
+      ByteBuffer blockBuffer, CompressionDict dict, byte[] output) {
+    // https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/table/table_builder.cc#L155
+    ByteBuffer contents = blockBuffer;
+    CompressionType type = CompressionType.NONE;
+    if (compressionType != CompressionType.NONE) {
+      Compressor compressor = compressionType.getCompressor();
+      int rawLength = blockBuffer.remaining();
+      if (output == null) {
+        output = new byte[compressor.maxCompressedLength(rawLength)];
+      }
+      int compressedLength = compressor.compress(blockBuffer, output, dict);
+      // Keep the block uncompressed unless compression saves at least 12.5%
+      if (compressedLength < rawLength - (rawLength / 8)) {
+        contents = ByteBuffer.wrap(output, 0, compressedLength);
+        type = compressionType;
+      }
+    }
+    return new CompressedBlock(contents, type);
+  }
 
-    // TODO(ricebin): crc32c
-    int crc32c = 0;
+  private BlockHandle writeRawBlock(ByteBuffer contents, CompressionType type) throws IOException {
+    return writeRawBlock(new CompressedBlock(contents, type));
+  }
+
+  private BlockHandle writeRawBlock(CompressedBlock block) throws IOException {
+    ByteBuffer contents = block.contents;
 
     // create block trailer
-    BlockTrailer blockTrailer = new BlockTrailer(compressionType, crc32c);
+    BlockTrailer blockTrailer = new BlockTrailer(block.type, block.crc32c);
     Slice trailerBuf = BlockTrailer.encode(blockTrailer, sliceFactory);
 
     // create a handle to this block
-    long pos = fileChannel.position();
-    int dataBlockLen = writeFully(compressed);
-    writeFully(trailerBuf.asByteBuffer());
-
-    blockBuilder.reset();
+    long pos = file.position();
+    int dataBlockLen = file.append(contents);
+    file.append(trailerBuf.asByteBuffer());
 
     return new BlockHandle(pos, dataBlockLen);
   }
@@ -89,46 +322,190 @@ public class TableBuilder {
       return;
     }
 
+    if (bufferedBlocks != null || writer != null) {
+      ByteBuffer contents = dataBlockBuilder.finish().asByteBuffer();
+      byte[] copy = new byte[contents.remaining()];
+      contents.get(copy);
+      dataBlockBuilder.reset();
+      DataBlock block = new DataBlock(copy, blockFirstKey, prevKey, blockFilterKeys);
+      blockFilterKeys = new ArrayList<>();
+      if (bufferedBlocks == null) {
+        submitDataBlock(block);
+        return;
+      }
+      bufferedBlocks.add(block);
+      bufferedBytes += copy.length;
+      if (bufferedBytes >= (long) maxDictBytes * DICT_SAMPLE_RATIO) {
+        writeBufferedBlocks();
+      }
+      return;
+    }
+
     checkState(pendingIndexEntry == null);
+    pendingIndexEntry = writeBlock(dataBlockBuilder.finish().asByteBuffer(), compressionDict);
+    dataBlockBuilder.reset();
+    startDataBlock();
+  }
+
+  // https://github.com/facebook/rocksdb/blob/main/table/block_based/block_based_table_builder.cc#L1898
+  // trains the dictionary on the buffered blocks and writes them as if they were just added
+  private void writeBufferedBlocks() throws IOException {
+    List<DataBlock> blocks = bufferedBlocks;
+    bufferedBlocks = null;
 
-    pendingIndexEntry = writeBlock(dataBlockBuilder);
+    List<byte[]> samples = new ArrayList<>(blocks.size());
+    for (DataBlock block : blocks) {
+      samples.add(block.contents);
+    }
+    byte[] dictionary = ZstdCompression.trainDictionary(samples, maxDictBytes);
+    if (dictionary != null) {
+      compressionDict = new CompressionDict(dictionary);
+    }
+
+    for (DataBlock block : blocks) {
+      if (writer != null) {
+        submitDataBlock(block);
+      } else {
+        writeDataBlock(
+            block, compressBlock(ByteBuffer.wrap(block.contents), compressionDict, null));
+      }
+    }
+  }
+
+  // https://github.com/facebook/rocksdb/blob/main/table/block_based/block_based_table_builder.cc
+  // Compresses the block on the pool and queues its write behind the blocks submitted before it,
+  // so blocks reach the file in order however long each one takes to compress.
+  private void submitDataBlock(DataBlock block) throws IOException {
+    checkWriteFailure();
+    blocksInFlight.acquireUninterruptibly();
+    CompressionDict dict = compressionDict;
+    CompletableFuture<CompressedBlock> compressed = CompletableFuture.supplyAsync(
+        () -> compressBlock(ByteBuffer.wrap(block.contents), dict, null), compressionPool);
+    lastWrite = lastWrite.thenCombineAsync(compressed, (ignored, compressedBlock) -> {
+      try {
+        writeDataBlock(block, compressedBlock);
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+      return null;
+    }, writer);
+    lastWrite.whenComplete((ignored, t) -> blocksInFlight.release());
+  }
+
+  // Writes a data block whose keys have not been added to the filter yet, and adds the index
+  // entry of the block before it.
+  private void writeDataBlock(DataBlock block, CompressedBlock compressed) throws IOException {
+    if (pendingIndexEntry != null) {
+      addIndexEntry(
+          sliceFactory.comparator().findShortestSeparator(pendingLastKey, block.firstKey),
+          pendingIndexEntry);
+      pendingIndexEntry = null;
+    }
+    addFilterKeys(block.filterKeys);
+
+    pendingIndexEntry = writeRawBlock(compressed);
+    pendingLastKey = block.lastKey;
+    startDataBlock();
+  }
+
+  // rethrows the failure of an earlier write in parallel mode
+  private void checkWriteFailure() throws IOException {
+    if (lastWrite.isCompletedExceptionally()) {
+      awaitWrites();
+    }
+  }
+
+  private void awaitWrites() throws IOException {
+    try {
+      lastWrite.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw new IOException(e.getCause());
+      }
+      throw e;
+    }
   }
 
   public void finish() throws IOException {
     checkState(finished.compareAndSet(false, true));
 
     flush();
+    if (bufferedBlocks != null) {
+      // fewer data blocks than the sample size
+      writeBufferedBlocks();
+    }
+    if (writer != null) {
+      try {
+        awaitWrites();
+      } finally {
+        compressionPool.shutdown();
+        writer.shutdown();
+      }
+    }
 
-    // TODO(ricebin): Write filter block
+    // metaindex entries have to be added in key order
+    SortedMap<String, Slice> metaIndexEntries = new TreeMap<>();
 
-    // write meta index block
-    // TODO(ricebin): actually write something here
-    BlockBuilder metaIndexBlockBuilder = new PrefixBlockBuilder(sliceFactory);
-    // TODO(postrelease): Add stats and other meta blocks
-    BlockHandle metaIndexBlockHandle = writeBlock(metaIndexBlockBuilder);
+    if (compressionDict != null) {
+      BlockHandle dictHandle = writeRawBlock(
+          ByteBuffer.wrap(compressionDict.dictionary), CompressionType.NONE);
+      metaIndexEntries.put(CompressionDict.META_KEY, BlockHandle.encode(dictHandle, sliceFactory));
+    }
+
+    // Write filter block
+    if (filterBlockBuilder != null) {
+      BlockHandle filterBlockHandle = writeRawBlock(
+          filterBlockBuilder.finish().asByteBuffer(), CompressionType.NONE);
+      metaIndexEntries.put(
+          "filter." + filterBlockBuilder.name(),
+          BlockHandle.encode(filterBlockHandle, sliceFactory));
+    } else if (fullFilterBuilder != null) {
+      BlockHandle filterBlockHandle = writeRawBlock(
+          fullFilterBuilder.finish().asByteBuffer(), CompressionType.NONE);
+      metaIndexEntries.put(
+          FullFilterBlock.META_PREFIX + fullFilterBuilder.name(),
+          BlockHandle.encode(filterBlockHandle, sliceFactory));
+    }
+    if (prefixExtractor != null) {
+      byte[] name = prefixExtractor.name().getBytes(StandardCharsets.UTF_8);
+      metaIndexEntries.put(PREFIX_EXTRACTOR_META_KEY, sliceFactory.wrap(name, 0, name.length));
+    }
 
     // Write index block
     // add last handle to index block
     if (pendingIndexEntry != null) {
       checkState(dataBlockBuilder.isEmpty());
 
-      Slice handleEncoding = BlockHandle.encode(pendingIndexEntry, sliceFactory);
-      indexBlockBuilder.add(prevKey, handleEncoding);
+      addIndexEntry(sliceFactory.comparator().findShortSuccessor(prevKey), pendingIndexEntry);
       pendingIndexEntry = null;
     }
-    BlockHandle indexBlockHandle = writeBlock(indexBlockBuilder);
+    BlockBuilder indexBuilder = indexBlockBuilder;
+    if (topLevelIndexBuilder != null) {
+      flushIndexPartition(lastIndexKey);
+      indexBuilder = topLevelIndexBuilder;
+      metaIndexEntries.put(
+          IndexType.META_KEY,
+          sliceFactory.newFixedSizeSink(1)
+              .putByte(IndexType.TWO_LEVEL_INDEX_SEARCH.getValue())
+              .finish());
+    }
+
+    // write meta index block
+    BlockBuilder metaIndexBlockBuilder =
+        new PrefixBlockBuilder(sliceFactory, SliceUtils.BYTEWISE, false);
+    for (Map.Entry<String, Slice> entry : metaIndexEntries.entrySet()) {
+      byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+      metaIndexBlockBuilder.add(sliceFactory.wrap(key, 0, key.length), entry.getValue());
+    }
+    // TODO(postrelease): Add stats and other meta blocks
+    BlockHandle metaIndexBlockHandle = writeBlock(metaIndexBlockBuilder);
+
+    BlockHandle indexBlockHandle = writeBlock(indexBuilder);
 
     // write footer
     Footer footer = new Footer(metaIndexBlockHandle, indexBlockHandle);
     Slice footerBuf = Footer.encode(footer, sliceFactory);
-    writeFully(footerBuf.asByteBuffer());
-  }
-
-  int writeFully(ByteBuffer buf) throws IOException {
-    int written = fileChannel.write(buf);
-    if (buf.hasRemaining()) {
-      throw new IllegalStateException("still have unwritten bytes");
-    }
-    return written;
+    file.append(footerBuf.asByteBuffer());
+    file.flush();
   }
 }
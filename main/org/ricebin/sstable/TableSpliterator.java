@@ -0,0 +1,140 @@
+package org.ricebin.sstable;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.ricebin.slice.Slice;
+
+/**
+ * Spliterator over the entries of a key range of a table. The data blocks of the range are
+ * resolved from the index up front, and {@link #trySplit()} hands out runs of whole blocks, so
+ * parallel streams read and decode disjoint blocks on different threads.
+ *
+ * <p>Keys are copied out of the block, values are views into it.
+ */
+class TableSpliterator implements Spliterator<Entry<Slice, Slice>> {
+
+  private final Slice.Factory sliceFactory;
+  private final Comparator<Slice> comparator;
+  private final Function<BlockHandle, Block<Slice>> getBlock;
+
+  // the data blocks of the whole range, this spliterator covers [from, to)
+  private final List<BlockHandle> blocks;
+  private int from;
+  private final int to;
+
+  private final Slice lowerBound;
+  private final Slice upperBound;
+
+  // positioned in blocks[from] once iteration started
+  private Cursor<Slice> cursor = null;
+
+  TableSpliterator(
+      Slice.Factory sliceFactory,
+      Function<BlockHandle, Block<Slice>> getBlock,
+      List<BlockHandle> blocks,
+      Slice lowerBound,
+      Slice upperBound) {
+    this(sliceFactory, getBlock, blocks, 0, blocks.size(), lowerBound, upperBound);
+  }
+
+  private TableSpliterator(
+      Slice.Factory sliceFactory,
+      Function<BlockHandle, Block<Slice>> getBlock,
+      List<BlockHandle> blocks,
+      int from,
+      int to,
+      Slice lowerBound,
+      Slice upperBound) {
+    this.sliceFactory = sliceFactory;
+    this.comparator = sliceFactory.comparator();
+    this.getBlock = getBlock;
+    this.blocks = blocks;
+    this.from = from;
+    this.to = to;
+    this.lowerBound = lowerBound;
+    this.upperBound = upperBound;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super Entry<Slice, Slice>> action) {
+    while (cursor == null || !cursor.isValid()) {
+      if (cursor != null) {
+        cursor = null;
+        from++;
+      }
+      if (from >= to) {
+        return false;
+      }
+      cursor = getBlock.apply(blocks.get(from)).cursor();
+      if (from == 0 && lowerBound != null) {
+        cursor.seek(lowerBound);
+      } else {
+        cursor.seekToFirst();
+      }
+    }
+
+    Slice key = cursor.key();
+    if (upperBound != null && comparator.compare(key, upperBound) >= 0) {
+      cursor = null;
+      from = to;
+      return false;
+    }
+    action.accept(new SimpleImmutableEntry<>(SliceUtils.copy(sliceFactory, key), cursor.value()));
+    cursor.next();
+    return true;
+  }
+
+  /**
+   * Splits off the first half of the remaining blocks, by size, including the block that is
+   * being read.
+   */
+  @Override
+  public Spliterator<Entry<Slice, Slice>> trySplit() {
+    if (to - from < 2) {
+      return null;
+    }
+    long half = estimateSize() / 2;
+    int mid = from + 1;
+    long prefixSize = blocks.get(from).getSize();
+    while (mid < to - 1 && prefixSize < half) {
+      prefixSize += blocks.get(mid).getSize();
+      mid++;
+    }
+
+    TableSpliterator prefix = new TableSpliterator(
+        sliceFactory, getBlock, blocks, from, mid, lowerBound, upperBound);
+    prefix.cursor = cursor;
+    cursor = null;
+    from = mid;
+    return prefix;
+  }
+
+  /**
+   * Returns the combined size of the remaining data blocks in bytes, which is proportional to
+   * the number of remaining entries.
+   */
+  @Override
+  public long estimateSize() {
+    long size = 0;
+    for (int i = from; i < to; i++) {
+      size += blocks.get(i).getSize();
+    }
+    return size;
+  }
+
+  @Override
+  public int characteristics() {
+    return SORTED | ORDERED | NONNULL;
+  }
+
+  @Override
+  public Comparator<? super Entry<Slice, Slice>> getComparator() {
+    return Map.Entry.comparingByKey(comparator);
+  }
+}
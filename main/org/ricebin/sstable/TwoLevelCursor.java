@@ -0,0 +1,132 @@
+package org.ricebin.sstable;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.function.Function;
+import org.ricebin.slice.Slice;
+
+/**
+ * Cursor over a sequence of blocks: an index cursor yields block handles, and a cursor over the
+ * current block yields the entries. Blocks are opened only when the cursor reaches them.
+ */
+// https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/table/two_level_iterator.cc
+class TwoLevelCursor<V> implements Cursor<V> {
+
+  private final Cursor<BlockHandle> indexCursor;
+  private final Function<BlockHandle, Cursor<V>> blockCursorFactory;
+
+  private Cursor<V> blockCursor = null;
+  private BlockHandle blockHandle = null;
+
+  TwoLevelCursor(
+      Cursor<BlockHandle> indexCursor, Function<BlockHandle, Cursor<V>> blockCursorFactory) {
+    this.indexCursor = indexCursor;
+    this.blockCursorFactory = blockCursorFactory;
+  }
+
+  @Override
+  public boolean isValid() {
+    return blockCursor != null && blockCursor.isValid();
+  }
+
+  @Override
+  public void seekToFirst() {
+    indexCursor.seekToFirst();
+    initBlock();
+    if (blockCursor != null) {
+      blockCursor.seekToFirst();
+    }
+    skipEmptyBlocksForward();
+  }
+
+  @Override
+  public void seekToLast() {
+    indexCursor.seekToLast();
+    initBlock();
+    if (blockCursor != null) {
+      blockCursor.seekToLast();
+    }
+    skipEmptyBlocksBackward();
+  }
+
+  @Override
+  public void seek(Slice target) {
+    indexCursor.seek(target);
+    initBlock();
+    if (blockCursor != null) {
+      blockCursor.seek(target);
+    }
+    skipEmptyBlocksForward();
+  }
+
+  @Override
+  public void next() {
+    checkState(isValid());
+    blockCursor.next();
+    skipEmptyBlocksForward();
+  }
+
+  @Override
+  public void prev() {
+    checkState(isValid());
+    blockCursor.prev();
+    skipEmptyBlocksBackward();
+  }
+
+  @Override
+  public Slice key() {
+    checkState(isValid());
+    return blockCursor.key();
+  }
+
+  @Override
+  public V value() {
+    checkState(isValid());
+    return blockCursor.value();
+  }
+
+  private void skipEmptyBlocksForward() {
+    while (blockCursor == null || !blockCursor.isValid()) {
+      if (!indexCursor.isValid()) {
+        blockCursor = null;
+        blockHandle = null;
+        return;
+      }
+      indexCursor.next();
+      initBlock();
+      if (blockCursor != null) {
+        blockCursor.seekToFirst();
+      }
+    }
+  }
+
+  private void skipEmptyBlocksBackward() {
+    while (blockCursor == null || !blockCursor.isValid()) {
+      if (!indexCursor.isValid()) {
+        blockCursor = null;
+        blockHandle = null;
+        return;
+      }
+      indexCursor.prev();
+      initBlock();
+      if (blockCursor != null) {
+        blockCursor.seekToLast();
+      }
+    }
+  }
+
+  private void initBlock() {
+    if (!indexCursor.isValid()) {
+      blockCursor = null;
+      blockHandle = null;
+      return;
+    }
+    BlockHandle handle = indexCursor.value();
+    if (blockCursor != null && handle.equals(blockHandle)) {
+      // already positioned in this block
+      return;
+    }
+    blockHandle = handle;
+    blockCursor = blockCursorFactory.apply(handle);
+  }
+}
@@ -0,0 +1,96 @@
+package org.ricebin.sstable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends to a file channel through a reusable direct buffer, so that a table built from small
+ * blocks is written in a few large writes instead of two small writes per block.
+ *
+ * <p>Data that does not fit in the rest of the buffer is written together with the buffer in a
+ * single gathering write, without being copied. The position is tracked here rather than queried
+ * from the channel, and if {@code bytesPerSync} is positive the written data is forced to the
+ * device every that many bytes, so the cost of syncing is spread over the build.
+ */
+// https://github.com/google/leveldb/blob/main/util/env_posix.cc
+final class WritableFile {
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+  private final long bytesPerSync;
+  private final ByteBuffer[] gather = new ByteBuffer[2];
+
+  // position of the next appended byte, including the buffered ones
+  private long position;
+  // bytes up to here have been written to the channel, and up to syncedPosition forced
+  private long writtenPosition;
+  private long syncedPosition;
+
+  WritableFile(FileChannel channel, int bufferSize, long bytesPerSync) throws IOException {
+    checkArgument(bufferSize > 0);
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    this.bytesPerSync = bytesPerSync;
+    this.position = channel.position();
+    this.writtenPosition = position;
+    this.syncedPosition = position;
+  }
+
+  long position() {
+    return position;
+  }
+
+  /**
+   * Appends the remaining bytes of {@code data}, and returns how many there were.
+   */
+  int append(ByteBuffer data) throws IOException {
+    int length = data.remaining();
+    if (length <= buffer.remaining()) {
+      buffer.put(data);
+    } else {
+      buffer.flip();
+      gather[0] = buffer;
+      gather[1] = data;
+      write(gather);
+      gather[1] = null;
+      buffer.clear();
+    }
+    position += length;
+    return length;
+  }
+
+  /**
+   * Writes the buffered bytes to the channel.
+   */
+  void flush() throws IOException {
+    if (buffer.position() == 0) {
+      return;
+    }
+    buffer.flip();
+    gather[0] = buffer;
+    gather[1] = null;
+    write(gather);
+    buffer.clear();
+  }
+
+  private void write(ByteBuffer[] srcs) throws IOException {
+    int count = srcs[1] == null ? 1 : 2;
+    long expected = 0;
+    for (int i = 0; i < count; i++) {
+      expected += srcs[i].remaining();
+    }
+    long written = 0;
+    while (written < expected) {
+      written += channel.write(srcs, 0, count);
+    }
+    writtenPosition += written;
+
+    if (bytesPerSync > 0 && writtenPosition - syncedPosition >= bytesPerSync) {
+      channel.force(false);
+      syncedPosition = writtenPosition;
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package org.ricebin.sstable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Zstd block compression through zstd-jni. Blocks are single zstd frames that record their
+ * uncompressed size, the same layout as leveldb's kZstdCompression, optionally compressed with a
+ * table wide {@link CompressionDict}.
+ */
+// https://github.com/google/leveldb/blob/main/port/port_stdcxx.h
+final class ZstdCompression {
+
+  // zstd's default level
+  static final int LEVEL = 3;
+
+  private ZstdCompression() {}
+
+  static int maxCompressedLength(int length) {
+    return (int) Zstd.compressBound(length);
+  }
+
+  static int compress(ByteBuffer input, byte[] output, CompressionDict dict) {
+    byte[] src = toArray(input);
+    int srcOffset = input.hasArray() ? input.arrayOffset() + input.position() : 0;
+    long size = dict == null
+        ? Zstd.compressByteArray(
+            output, 0, output.length, src, srcOffset, input.remaining(), LEVEL)
+        : Zstd.compressFastDict(
+            output, 0, src, srcOffset, input.remaining(), dict.compressContext());
+    if (Zstd.isError(size)) {
+      throw new ZstdException(size);
+    }
+    return (int) size;
+  }
+
+  static ByteBuffer uncompress(ByteBuffer input, CompressionDict dict) {
+    byte[] src = toArray(input);
+    int srcOffset = input.hasArray() ? input.arrayOffset() + input.position() : 0;
+    int srcLength = input.remaining();
+    long length = Zstd.getFrameContentSize(src, srcOffset, srcLength);
+    checkArgument(length >= 0 && length <= Integer.MAX_VALUE, "corrupted zstd input");
+
+    byte[] output = new byte[(int) length];
+    long size = dict == null
+        ? Zstd.decompressByteArray(output, 0, output.length, src, srcOffset, srcLength)
+        : Zstd.decompressFastDict(
+            output, 0, src, srcOffset, srcLength, dict.decompressContext());
+    checkArgument(!Zstd.isError(size) && size == length, "corrupted zstd input");
+    return ByteBuffer.wrap(output).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Trains a dictionary of at most {@code maxDictBytes} from the sample blocks, or returns null
+   * if there is too little sample data to train one.
+   */
+  static byte[] trainDictionary(List<byte[]> samples, int maxDictBytes) {
+    int sampleBytes = 0;
+    for (byte[] sample : samples) {
+      sampleBytes += sample.length;
+    }
+    ZstdDictTrainer trainer = new ZstdDictTrainer(sampleBytes, maxDictBytes);
+    for (byte[] sample : samples) {
+      trainer.addSample(sample);
+    }
+    try {
+      return trainer.trainSamples();
+    } catch (ZstdException e) {
+      return null;
+    }
+  }
+
+  // the backing array of heap buffers, blocks of memory mapped files are copied once
+  private static byte[] toArray(ByteBuffer buf) {
+    if (buf.hasArray()) {
+      return buf.array();
+    }
+    byte[] array = new byte[buf.remaining()];
+    buf.duplicate().get(array);
+    return array;
+  }
+}
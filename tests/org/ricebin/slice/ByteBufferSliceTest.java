@@ -4,6 +4,7 @@ import static com.google.common.truth.Truth.assertThat;
 
 import com.google.common.base.Charsets;
 import com.google.common.truth.Truth;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -168,6 +169,60 @@ public class ByteBufferSliceTest {
     assertThat(compare("bc", "ab")).isGreaterThan(0);
   }
 
+  @Test
+  public void testCompareWithoutBackingArray() {
+    ByteBufferSlice direct = newDirectSlice("ab");
+    assertThat(direct.compareTo(newSlice("ab"))).isEqualTo(0);
+    assertThat(direct.compareTo(newSlice("b"))).isLessThan(0);
+    assertThat(newSlice("abc").compareTo(direct)).isGreaterThan(0);
+    assertThat(newDirectSlice("\u00ff").compareTo(direct)).isGreaterThan(0);
+  }
+
+  @Test
+  public void testFindShortestSeparator() {
+    SliceComparator<ByteBufferSlice> comparator = ByteBufferSlice.FACTORY.comparator();
+    assertThat(asString(comparator.findShortestSeparator(newSlice("abc1xyz"), newSlice("abc5"))))
+        .isEqualTo("abc2");
+    assertThat(asString(comparator.findShortestSeparator(newDirectSlice("key1"), newSlice("key3"))))
+        .isEqualTo("key2");
+    // the byte after the common prefix cannot be incremented without reaching limit
+    assertThat(asString(comparator.findShortestSeparator(newSlice("abc1xyz"), newSlice("abc2"))))
+        .isEqualTo("abc1xyz");
+    // one is a prefix of the other
+    assertThat(asString(comparator.findShortestSeparator(newSlice("abc"), newSlice("abcdef"))))
+        .isEqualTo("abc");
+    ByteBufferSlice ff = ByteBufferSlice.create(new byte[]{'a', (byte) 0xff, 'x'});
+    assertThat(comparator.findShortestSeparator(ff, newSlice("b"))).isSameInstanceAs(ff);
+  }
+
+  @Test
+  public void testFindShortSuccessor() {
+    SliceComparator<ByteBufferSlice> comparator = ByteBufferSlice.FACTORY.comparator();
+    assertThat(asString(comparator.findShortSuccessor(newSlice("key3")))).isEqualTo("l");
+    ByteBufferSlice key = ByteBufferSlice.create(new byte[]{(byte) 0xff, (byte) 0xff, 'a', 'b'});
+    ByteBufferSlice successor = comparator.findShortSuccessor(key);
+    assertThat(successor.len()).isEqualTo(3);
+    assertThat(successor.getUnsignedByte(2)).isEqualTo((int) 'b');
+    assertThat(comparator.compare(successor, key)).isGreaterThan(0);
+    ByteBufferSlice allFf = ByteBufferSlice.create(new byte[]{(byte) 0xff, (byte) 0xff});
+    assertThat(comparator.findShortSuccessor(allFf)).isSameInstanceAs(allFf);
+  }
+
+  private static String asString(Slice slice) {
+    byte[] bytes = new byte[slice.len()];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = slice.getByte(i);
+    }
+    return new String(bytes, Charsets.UTF_8);
+  }
+
+  private static ByteBufferSlice newDirectSlice(String input) {
+    byte[] bytes = input.getBytes(Charsets.UTF_8);
+    ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+    buf.put(bytes).flip();
+    return ByteBufferSlice.wrap(buf);
+  }
+
   private static int compare(String a, String b) {
     return newSlice(a).compareTo(newSlice(b));
   }
@@ -0,0 +1,97 @@
+package org.ricebin.sstable;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.ricebin.sstable.BloomFilterPolicyTest.newSlice;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.ricebin.slice.Slice;
+import org.ricebin.sstable.FilterPolicy.Reader;
+import org.ricebin.sstable.FilterPolicy.Writer;
+
+public class BinaryFuseFilterPolicyTest {
+
+  private BinaryFuseFilterPolicy policy;
+
+  @Before
+  public void setUp() {
+    policy = BinaryFuseFilterPolicy.BINARY_FUSE8_FILTER;
+  }
+
+  @Test
+  public void testEmpty() {
+    Writer writer = policy.getWriter();
+    Slice filter = newSlice(writer.createFilter(ImmutableSet.of()));
+    assertThat(policy.getReader().keyMayMatch(newSlice("hello"), filter)).isFalse();
+    assertThat(policy.getReader().keyMayMatch(newSlice("world"), filter)).isFalse();
+  }
+
+  @Test
+  public void testHappy() {
+    Writer writer = policy.getWriter();
+    Slice filter = newSlice(writer.createFilter(ImmutableSet.of(
+        newSlice("hello"),
+        newSlice("world"))));
+    assertThat(policy.getReader().keyMayMatch(newSlice("hello"), filter)).isTrue();
+    assertThat(policy.getReader().keyMayMatch(newSlice("world"), filter)).isTrue();
+    assertThat(policy.getReader().keyMayMatch(newSlice("x"), filter)).isFalse();
+    assertThat(policy.getReader().keyMayMatch(newSlice("foo"), filter)).isFalse();
+  }
+
+  @Test
+  public void testDuplicateKeys() {
+    Writer writer = policy.getWriter();
+    Slice filter = newSlice(writer.createFilter(ImmutableList.of(
+        newSlice("hello"),
+        newSlice("hello"),
+        newSlice("world"))));
+    assertThat(policy.getReader().keyMayMatch(newSlice("hello"), filter)).isTrue();
+    assertThat(policy.getReader().keyMayMatch(newSlice("world"), filter)).isTrue();
+  }
+
+  @Test
+  public void testVaryingLengths() {
+    Writer writer = policy.getWriter();
+    Reader reader = policy.getReader();
+    for (int length = 1; length <= 100000; length = nextLength(length)) {
+      List<Slice> keys = new ArrayList<>();
+      for (int i = 0; i < length; i++) {
+        keys.add(newSlice("key" + i));
+      }
+      Slice filter = newSlice(writer.createFilter(keys));
+      if (length >= 100000) {
+        // about 9 bits per key
+        assertThat(filter.len()).isAtMost(length * 10 / 8);
+      }
+
+      // All added keys must match
+      for (Slice key : keys) {
+        assertThat(reader.keyMayMatch(key, filter)).isTrue();
+      }
+
+      // Check false positive rate, expected 1 / 256
+      int falsePositives = 0;
+      for (int i = 0; i < 10000; i++) {
+        if (reader.keyMayMatch(newSlice("missing" + i), filter)) {
+          falsePositives++;
+        }
+      }
+      assertThat(falsePositives).isAtMost(100);
+    }
+  }
+
+  private static int nextLength(int length) {
+    if (length < 10) {
+      return length + 1;
+    } else if (length < 100) {
+      return length + 10;
+    } else if (length < 1000) {
+      return length + 100;
+    }
+    return length * 10;
+  }
+}
@@ -0,0 +1,80 @@
+package org.ricebin.sstable;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.ricebin.slice.ByteBufferSlice;
+import org.ricebin.slice.Slice;
+
+// https://github.com/google/leveldb/blob/master/util/cache_test.cc
+public class BlockCacheTest {
+
+  @Test
+  public void testHitAndMiss() {
+    BlockCache cache = new BlockCache(1 << 20);
+    long id = cache.newId();
+    PrefixBlock<Slice> block = newBlock(100);
+
+    assertThat(cache.get(id, 0)).isNull();
+    cache.put(id, 0, block, block.size());
+    assertThat(cache.get(id, 0)).isSameInstanceAs(block);
+    assertThat(cache.get(id, 100)).isNull();
+    assertThat(cache.usage()).isEqualTo(100L);
+  }
+
+  @Test
+  public void testTablesDoNotCollide() {
+    BlockCache cache = new BlockCache(1 << 20);
+    long id1 = cache.newId();
+    long id2 = cache.newId();
+    assertThat(id1).isNotEqualTo(id2);
+
+    PrefixBlock<Slice> block1 = newBlock(10);
+    PrefixBlock<Slice> block2 = newBlock(10);
+    cache.put(id1, 0, block1, block1.size());
+    cache.put(id2, 0, block2, block2.size());
+    assertThat(cache.get(id1, 0)).isSameInstanceAs(block1);
+    assertThat(cache.get(id2, 0)).isSameInstanceAs(block2);
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    // single shard so eviction order is deterministic
+    BlockCache cache = new BlockCache(300, 0);
+    long id = cache.newId();
+    PrefixBlock<Slice> a = newBlock(100);
+    PrefixBlock<Slice> b = newBlock(100);
+    PrefixBlock<Slice> c = newBlock(100);
+    PrefixBlock<Slice> d = newBlock(100);
+
+    cache.put(id, 0, a, a.size());
+    cache.put(id, 100, b, b.size());
+    cache.put(id, 200, c, c.size());
+
+    // touch a so b becomes the eldest
+    assertThat(cache.get(id, 0)).isSameInstanceAs(a);
+    cache.put(id, 300, d, d.size());
+
+    assertThat(cache.get(id, 100)).isNull();
+    assertThat(cache.get(id, 0)).isSameInstanceAs(a);
+    assertThat(cache.get(id, 200)).isSameInstanceAs(c);
+    assertThat(cache.get(id, 300)).isSameInstanceAs(d);
+    assertThat(cache.usage()).isEqualTo(300L);
+  }
+
+  @Test
+  public void testBlockLargerThanCapacityIsNotCached() {
+    BlockCache cache = new BlockCache(50, 0);
+    long id = cache.newId();
+    PrefixBlock<Slice> block = newBlock(100);
+    cache.put(id, 0, block, block.size());
+    assertThat(cache.get(id, 0)).isNull();
+    assertThat(cache.usage()).isEqualTo(0L);
+  }
+
+  private static PrefixBlock<Slice> newBlock(int size) {
+    Slice.Factory factory = ByteBufferSlice.FACTORY;
+    Slice data = factory.wrap(new byte[size], 0, size);
+    return new PrefixBlock<Slice>(factory, data, factory.comparator(), s -> s);
+  }
+}
@@ -9,7 +9,11 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
@@ -47,6 +51,108 @@ public class CppTableCompatTest {
 
     assertThat(table.mayExists(newSlice("key123"))).isFalse();
     assertThat(table.get(newSlice("key123"))).isNull();
+
+    List<Slice> values = table.multiGet(Arrays.asList(
+        newSlice("key3"), newSlice("key123"), newSlice("key1"), newSlice("key2")));
+    assertThat(getBytes(values.get(0))).isEqualTo("value4".getBytes());
+    assertThat(values.get(1)).isNull();
+    assertThat(getBytes(values.get(2))).isEqualTo("value2".getBytes());
+    assertThat(values.get(3)).isNull();
+  }
+
+  @Test
+  public void testWriteFilter() throws Exception {
+    File file = tempDir.newFile();
+    FileChannel fc = new RandomAccessFile(file, "rw").getChannel();
+    TableBuilder builder = new TableBuilder(
+        ByteBufferSlice.FACTORY,
+        fc,
+        CompressionType.NONE,
+        new Options().filterPolicy(BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getWriter(10)));
+    builder.add(newSlice("key1"), newSlice("value2"));
+    builder.add(newSlice("key3"), newSlice("value4"));
+    builder.finish();
+    fc.close();
+
+    Table table = Table.open(
+        file,
+        BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getReader(),
+        ByteBufferSlice.FACTORY);
+
+    // same filter block as the one written by leveldb for testWithFilter.sst
+    assertThat(getBytes(table.filterBlock.blockContent))
+        .isEqualTo(new byte[]{0, 8, 64, 2, 16, 0, 4, 32, 6, 0, 0, 0, 0, 9, 0, 0, 0, 11});
+    assertThat(table.mayExists(newSlice("key123"))).isFalse();
+
+    // the index stores "l", the short successor of "key3", so the whole table matches too
+    assertThat(Files.readAllBytes(file.toPath())).isEqualTo(Files.readAllBytes(
+        Paths.get("tests/org/ricebin/sstable/testfiles/testWithFilter.sst")));
+  }
+
+  @Test
+  public void testSnappy() throws Exception {
+    String fileName = "tests/org/ricebin/sstable/testfiles/testSnappy.sst";
+    // the first data block is 442 bytes, followed by its compression type
+    assertThat(Files.readAllBytes(Paths.get(fileName))[442])
+        .isEqualTo(CompressionType.SNAPPY.getValue());
+
+    Table table = Table.open(
+        new File(fileName),
+        BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getReader(),
+        ByteBufferSlice.FACTORY,
+        new Options().verifyChecksums(true));
+    Iterator<Entry<Slice, Slice>> it = table.iterator();
+    for (int i = 0; i < SNAPPY_TABLE_ENTRIES; i++) {
+      assertThat(it.hasNext()).isTrue();
+      Entry<Slice, Slice> entry = it.next();
+      assertThat(getBytes(entry.getKey())).isEqualTo(snappyTableKey(i));
+      assertThat(getBytes(entry.getValue())).isEqualTo(snappyTableValue(i));
+      assertThat(getBytes(table.get(newSlice(snappyTableKey(i)))))
+          .isEqualTo(snappyTableValue(i));
+    }
+    assertThat(it.hasNext()).isFalse();
+  }
+
+  @Test
+  public void testWriteSnappy() throws Exception {
+    File file = tempDir.newFile();
+    FileChannel fc = new RandomAccessFile(file, "rw").getChannel();
+    TableBuilder builder = new TableBuilder(
+        ByteBufferSlice.FACTORY, fc, CompressionType.SNAPPY, new Options());
+    for (int i = 0; i < SNAPPY_TABLE_ENTRIES; i++) {
+      builder.add(newSlice(snappyTableKey(i)), newSlice(snappyTableValue(i)));
+    }
+    builder.finish();
+    fc.close();
+
+    // leveldb shortens index keys with its internal key comparator, so only the 50 compressed
+    // data blocks are compared
+    int dataBlocksLength = 22356;
+    assertThat(Arrays.copyOf(Files.readAllBytes(file.toPath()), dataBlocksLength))
+        .isEqualTo(Arrays.copyOf(Files.readAllBytes(
+            Paths.get("tests/org/ricebin/sstable/testfiles/testSnappy.sst")), dataBlocksLength));
+
+    Table table = Table.open(
+        file,
+        BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getReader(),
+        ByteBufferSlice.FACTORY,
+        new Options().verifyChecksums(true));
+    assertThat(Iterators.size(table.iterator())).isEqualTo(SNAPPY_TABLE_ENTRIES);
+  }
+
+  @Test
+  public void testVerifyChecksums() throws Exception {
+    for (String fileName : new String[]{
+        "tests/org/ricebin/sstable/testfiles/testWithFilter.sst",
+        "tests/org/ricebin/sstable/testfiles/testSnappy.sst",
+        "tests/org/ricebin/sstable/testfiles/000005.sst"}) {
+      Table table = Table.open(
+          new File(fileName),
+          BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getReader(),
+          ByteBufferSlice.FACTORY,
+          new Options().verifyChecksums(true));
+      assertThat(Iterators.size(table.iterator())).isGreaterThan(0);
+    }
   }
 
   @Test
@@ -83,6 +189,38 @@ public class CppTableCompatTest {
     }
   }
 
+  // testSnappy.sst was written by leveldb with snappy compression, from db->Put of "key%03d" to
+  // snappyTableValue(i) for i in [0, 100) followed by a compaction, so its keys are internal
+  // keys with sequence number i + 1.
+  private static final int SNAPPY_TABLE_ENTRIES = 100;
+
+  private static byte[] snappyTableKey(int i) {
+    byte[] userKey = String.format("key%03d", i).getBytes(StandardCharsets.UTF_8);
+    byte[] key = Arrays.copyOf(userKey, userKey.length + 8);
+    // little endian (sequence << 8) | kTypeValue
+    key[userKey.length] = 1;
+    key[userKey.length + 1] = (byte) (i + 1);
+    return key;
+  }
+
+  // literals, short and long copies of them, and a run of zeros
+  private static byte[] snappyTableValue(int i) {
+    Random random = new Random(i);
+    StringBuilder letters = new StringBuilder();
+    for (int j = 0; j < 80; j++) {
+      letters.append((char) ('a' + random.nextInt(26)));
+    }
+    StringBuilder value = new StringBuilder();
+    for (int j = 0; j < 4; j++) {
+      value.append(letters);
+    }
+    for (int j = 0; j < 2100; j++) {
+      value.append('0');
+    }
+    value.append(letters);
+    return value.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
   private static Map.Entry<Slice, Slice> getNext(Table table, Slice key) {
     Iterator<Entry<Slice, Slice>> it = table.iterator(key);
     return it.next();
@@ -0,0 +1,85 @@
+package org.ricebin.sstable;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.ricebin.sstable.BloomFilterPolicyTest.newSlice;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.ricebin.slice.Slice;
+import org.ricebin.sstable.FilterPolicy.Reader;
+import org.ricebin.sstable.FilterPolicy.Writer;
+
+public class FastLocalBloomFilterPolicyTest {
+
+  private FastLocalBloomFilterPolicy policy;
+
+  @Before
+  public void setUp() {
+    policy = FastLocalBloomFilterPolicy.FAST_LOCAL_BLOOM_FILTER;
+  }
+
+  @Test
+  public void testEmpty() {
+    Writer writer = policy.getWriter(10);
+    Slice filter = newSlice(writer.createFilter(ImmutableSet.of()));
+    assertThat(policy.getReader().keyMayMatch(newSlice("hello"), filter)).isFalse();
+    assertThat(policy.getReader().keyMayMatch(newSlice("world"), filter)).isFalse();
+  }
+
+  @Test
+  public void testHappy() {
+    Writer writer = policy.getWriter(10);
+    Slice filter = newSlice(writer.createFilter(ImmutableSet.of(
+        newSlice("hello"),
+        newSlice("world"))));
+    assertThat(filter.len()).isEqualTo(FastLocalBloomFilterPolicy.CACHE_LINE_SIZE + 1);
+    assertThat(policy.getReader().keyMayMatch(newSlice("hello"), filter)).isTrue();
+    assertThat(policy.getReader().keyMayMatch(newSlice("world"), filter)).isTrue();
+    assertThat(policy.getReader().keyMayMatch(newSlice("x"), filter)).isFalse();
+    assertThat(policy.getReader().keyMayMatch(newSlice("foo"), filter)).isFalse();
+  }
+
+  // https://github.com/google/leveldb/blob/f57513a1d6c99636fc5b710150d0b93713af4e43/util/bloom_test.cc#L114
+  @Test
+  public void testVaryingLengths() {
+    Writer writer = policy.getWriter(10);
+    Reader reader = policy.getReader();
+    for (int length = 1; length <= 10000; length = nextLength(length)) {
+      List<Slice> keys = new ArrayList<>();
+      for (int i = 0; i < length; i++) {
+        keys.add(newSlice("key" + i));
+      }
+      Slice filter = newSlice(writer.createFilter(keys));
+      assertThat(filter.len())
+          .isAtMost((length * 10 / 8) + FastLocalBloomFilterPolicy.CACHE_LINE_SIZE + 1);
+
+      // All added keys must match
+      for (Slice key : keys) {
+        assertThat(reader.keyMayMatch(key, filter)).isTrue();
+      }
+
+      // Check false positive rate
+      int falsePositives = 0;
+      for (int i = 0; i < 10000; i++) {
+        if (reader.keyMayMatch(newSlice("missing" + i), filter)) {
+          falsePositives++;
+        }
+      }
+      assertThat(falsePositives).isAtMost(200); // Must not be over 2%
+    }
+  }
+
+  private static int nextLength(int length) {
+    if (length < 10) {
+      return length + 1;
+    } else if (length < 100) {
+      return length + 10;
+    } else if (length < 1000) {
+      return length + 100;
+    }
+    return length + 1000;
+  }
+}
@@ -0,0 +1,78 @@
+package org.ricebin.sstable;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.Test;
+import org.ricebin.slice.ByteBufferSlice;
+import org.ricebin.slice.Slice;
+
+public class KeyBufferTest {
+
+  private static final Slice.Factory SLICE_FACTORY = ByteBufferSlice.FACTORY;
+
+  @Test
+  public void testAddPastInitialCapacity() {
+    KeyBuffer buffer = new KeyBuffer(SLICE_FACTORY);
+    // more keys than the initial 64 starts and more bytes than the initial 1024, with a key
+    // longer than the doubled array
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < 1000; i++) {
+        buffer.add(slice(key(i)));
+      }
+      buffer.add(slice(longKey()));
+
+      List<Slice> keys = buffer.keys();
+      assertThat(keys.size()).isEqualTo(1001);
+      for (int i = 0; i < 1000; i++) {
+        assertThat(asString(keys.get(i))).isEqualTo(key(i));
+      }
+      assertThat(asString(keys.get(1000))).isEqualTo(longKey());
+      buffer.clear();
+    }
+  }
+
+  @Test
+  public void testNewCapacity() {
+    assertThat(KeyBuffer.newCapacity(1024, 1025)).isEqualTo(2048);
+    assertThat(KeyBuffer.newCapacity(1024, 5000)).isEqualTo(5000);
+
+    // doubling past 1GB would overflow an int
+    int oneGb = 1 << 30;
+    assertThat(KeyBuffer.newCapacity(oneGb, oneGb + 1L)).isEqualTo(KeyBuffer.MAX_CAPACITY);
+    assertThat(KeyBuffer.newCapacity(oneGb + 100, oneGb + 101L))
+        .isEqualTo(KeyBuffer.MAX_CAPACITY);
+    assertThat(KeyBuffer.newCapacity(KeyBuffer.MAX_CAPACITY - 1, KeyBuffer.MAX_CAPACITY))
+        .isEqualTo(KeyBuffer.MAX_CAPACITY);
+
+    assertThrows(IllegalStateException.class,
+        () -> KeyBuffer.newCapacity(KeyBuffer.MAX_CAPACITY, KeyBuffer.MAX_CAPACITY + 1L));
+    assertThrows(IllegalStateException.class,
+        () -> KeyBuffer.newCapacity(oneGb, Integer.MAX_VALUE + 10L));
+  }
+
+  private static String key(int i) {
+    return String.format("key%05d", i);
+  }
+
+  private static String longKey() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      sb.append((char) ('a' + i % 26));
+    }
+    return sb.toString();
+  }
+
+  private static Slice slice(String s) {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    return SLICE_FACTORY.wrap(bytes, 0, bytes.length);
+  }
+
+  private static String asString(Slice slice) {
+    byte[] bytes = new byte[slice.len()];
+    slice.newReader().getBytes(bytes, 0, bytes.length);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,52 @@
+package org.ricebin.sstable;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedReadOnlyFileTest {
+
+  @Rule
+  public final TemporaryFolder tempDir = new TemporaryFolder();
+
+  @Test
+  public void testReadWithinAndAcrossChunks() throws IOException {
+    byte[] content = new byte[5000];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) i;
+    }
+    File file = tempDir.newFile();
+    Files.write(file.toPath(), content);
+
+    // 1KB chunks
+    MappedReadOnlyFile mapped =
+        new MappedReadOnlyFile(new RandomAccessFile(file, "r").getChannel(), 10);
+    assertThat(mapped.size()).isEqualTo(5000L);
+
+    assertRead(mapped, content, 0, 1024);
+    assertRead(mapped, content, 100, 200);
+    assertRead(mapped, content, 1000, 100);
+    assertRead(mapped, content, 1000, 3000);
+    assertRead(mapped, content, 4096, 904);
+    mapped.close();
+  }
+
+  private static void assertRead(MappedReadOnlyFile file, byte[] content, int pos, int len)
+      throws IOException {
+    ByteBuffer buf = file.readFully(pos, len);
+    assertThat(buf.position()).isEqualTo(0);
+    assertThat(buf.remaining()).isEqualTo(len);
+    byte[] actual = new byte[len];
+    buf.get(actual);
+    byte[] expected = new byte[len];
+    System.arraycopy(content, pos, expected, 0, len);
+    assertThat(actual).isEqualTo(expected);
+  }
+}
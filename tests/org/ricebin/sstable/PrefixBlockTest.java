@@ -0,0 +1,112 @@
+package org.ricebin.sstable;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.Test;
+import org.ricebin.slice.ByteBufferSlice;
+import org.ricebin.slice.Slice;
+
+public class PrefixBlockTest {
+
+  private static final Slice.Factory SLICE_FACTORY = ByteBufferSlice.FACTORY;
+
+  @Test
+  public void testCursor() {
+    PrefixBlock<Slice> block = newBlock(100, s -> s);
+    Cursor<Slice> cursor = block.cursor();
+    assertThat(cursor.isValid()).isFalse();
+
+    cursor.seekToFirst();
+    for (int i = 0; i < 100; i++) {
+      assertThat(cursor.isValid()).isTrue();
+      assertThat(asString(cursor.key())).isEqualTo(key(i));
+      assertThat(asString(cursor.value())).isEqualTo("value" + i);
+      cursor.next();
+    }
+    assertThat(cursor.isValid()).isFalse();
+
+    cursor.seek(newSlice(key(42)));
+    assertThat(asString(cursor.key())).isEqualTo(key(42));
+    cursor.seek(newSlice(key(42) + "x"));
+    assertThat(asString(cursor.key())).isEqualTo(key(43));
+    cursor.seek(newSlice("a"));
+    assertThat(asString(cursor.key())).isEqualTo(key(0));
+    cursor.seek(newSlice("zzz"));
+    assertThat(cursor.isValid()).isFalse();
+
+    cursor.seekToLast();
+    for (int i = 99; i >= 0; i--) {
+      assertThat(cursor.isValid()).isTrue();
+      assertThat(asString(cursor.key())).isEqualTo(key(i));
+      assertThat(asString(cursor.value())).isEqualTo("value" + i);
+      cursor.prev();
+    }
+    assertThat(cursor.isValid()).isFalse();
+
+    // prev and next across restart points
+    cursor.seek(newSlice(key(33)));
+    cursor.prev();
+    assertThat(asString(cursor.key())).isEqualTo(key(32));
+    cursor.prev();
+    assertThat(asString(cursor.key())).isEqualTo(key(31));
+    cursor.next();
+    cursor.next();
+    assertThat(asString(cursor.key())).isEqualTo(key(33));
+  }
+
+  @Test
+  public void testValuesDecodedOnDemand() {
+    AtomicInteger decoded = new AtomicInteger();
+    PrefixBlock<Slice> block = newBlock(100, s -> {
+      decoded.incrementAndGet();
+      return s;
+    });
+
+    Cursor<Slice> cursor = block.cursor();
+    int count = 0;
+    for (cursor.seekToFirst(); cursor.isValid(); cursor.next()) {
+      count++;
+    }
+    assertThat(count).isEqualTo(100);
+    assertThat(decoded.get()).isEqualTo(0);
+
+    // positioning skips 50 entries without decoding them
+    Iterator<Entry<Slice, Slice>> it = block.iterator(newSlice(key(50)));
+    Entry<Slice, Slice> entry = it.next();
+    it.next();
+    assertThat(decoded.get()).isEqualTo(0);
+    assertThat(asString(entry.getValue())).isEqualTo("value50");
+    assertThat(decoded.get()).isEqualTo(1);
+  }
+
+  private static PrefixBlock<Slice> newBlock(int size, Function<Slice, Slice> valueDecoder) {
+    PrefixBlockBuilder builder = new PrefixBlockBuilder(SLICE_FACTORY);
+    for (int i = 0; i < size; i++) {
+      builder.add(newSlice(key(i)), newSlice("value" + i));
+    }
+    return new PrefixBlock<>(
+        SLICE_FACTORY, builder.finish(), SLICE_FACTORY.comparator(), valueDecoder);
+  }
+
+  private static String key(int i) {
+    return String.format("key%04d", i);
+  }
+
+  private static Slice newSlice(String s) {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    return SLICE_FACTORY.wrap(bytes, 0, bytes.length);
+  }
+
+  private static String asString(Slice slice) {
+    byte[] bytes = new byte[slice.len()];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = slice.getByte(i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
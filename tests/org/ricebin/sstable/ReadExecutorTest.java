@@ -0,0 +1,53 @@
+package org.ricebin.sstable;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class ReadExecutorTest {
+
+  @Test
+  public void testCapsInFlightReads() throws Exception {
+    ExecutorService threads = Executors.newFixedThreadPool(16);
+    ReadExecutor executor = new ReadExecutor(threads, 2);
+
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    List<CompletableFuture<Integer>> futures = new ArrayList<>();
+    for (int i = 0; i < 32; i++) {
+      int value = i;
+      futures.add(executor.submit(() -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        Thread.sleep(2);
+        running.decrementAndGet();
+        return value;
+      }));
+    }
+    for (int i = 0; i < futures.size(); i++) {
+      assertThat(futures.get(i).get()).isEqualTo(i);
+    }
+    assertThat(maxRunning.get()).isAtMost(2);
+    threads.shutdown();
+  }
+
+  @Test
+  public void testFailedReadCompletesExceptionally() throws Exception {
+    CompletableFuture<Object> future = ReadExecutor.getDefault().submit(() -> {
+      throw new IOException("boom");
+    });
+    try {
+      future.get();
+      throw new AssertionError("expected failure");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(IOException.class);
+    }
+  }
+}
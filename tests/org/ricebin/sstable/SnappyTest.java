@@ -0,0 +1,159 @@
+package org.ricebin.sstable;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+// https://github.com/google/snappy/blob/main/snappy_unittest.cc
+public class SnappyTest {
+
+  @Test
+  public void testUncompress() {
+    // literal "abcd" followed by a 12 byte copy at offset 4 that overlaps its own output
+    byte[] compressed = {0x10, 0x0c, 'a', 'b', 'c', 'd', 0x2e, 0x04, 0x00};
+    assertThat(toBytes(Snappy.uncompress(ByteBuffer.wrap(compressed))))
+        .isEqualTo("abcdabcdabcdabcd".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testReferenceVectors() throws Exception {
+    // libsnappy 1.1.10 output for 3 copies of 70 letters, 2100 zeros and the letters again: a
+    // literal with a 1 byte length, 2 byte offset copies of the letters and the zeros, a 1 byte
+    // offset copy, and a 2 byte offset copy of the letters 2310 bytes back
+    String letters = "qmdkiasnmwquahbulcxjkqjboidscvxvbjxqmiwshmvdnpazysuxsyswadotmnmxsnyjtj";
+    StringBuilder input = new StringBuilder();
+    input.append(letters).append(letters).append(letters);
+    for (int i = 0; i < 2100; i++) {
+      input.append('0');
+    }
+    input.append(letters);
+    assertUncompress(
+        "cc12f046" + toHex(letters) + "71fe4600fe46001d460030"
+            + "fe0100".repeat(32) + "ca0100fe0609160609",
+        input.toString().getBytes(StandardCharsets.UTF_8));
+
+    // literals with 2 and 3 byte lengths. libsnappy emits the first for input without matches,
+    // but not the second since it compresses 64KB at a time
+    Random random = new Random(301);
+    byte[] literal = randomBytes(random, 320, 256);
+    assertUncompress("c002f43f01" + toHex(literal), literal);
+    literal = randomBytes(random, 70000, 256);
+    assertUncompress("f0a204f86f1101" + toHex(literal), literal);
+
+    // a copy with a 4 byte offset, which libsnappy decodes but never emits
+    assertUncompress("080c616263640f04000000", "abcdabcd".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testReferenceImplementation() throws Exception {
+    Random random = new Random(301);
+    for (int length : new int[]{0, 1, 15, 100, 4096, 65536, 200000}) {
+      for (byte[] input : new byte[][]{
+          randomBytes(random, length, 256), randomBytes(random, length, 4), new byte[length]}) {
+        // our output through libsnappy
+        byte[] output = new byte[Snappy.maxCompressedLength(input.length)];
+        int compressedLength = Snappy.compress(input, 0, input.length, output);
+        assertThat(org.xerial.snappy.Snappy.uncompress(Arrays.copyOf(output, compressedLength)))
+            .isEqualTo(input);
+
+        // libsnappy output through ours
+        byte[] reference = org.xerial.snappy.Snappy.compress(input);
+        assertThat(toBytes(Snappy.uncompress(ByteBuffer.wrap(reference)))).isEqualTo(input);
+      }
+    }
+  }
+
+  @Test
+  public void testRoundTrip() {
+    Random random = new Random(301);
+    for (int length : new int[]{0, 1, 14, 15, 16, 100, 4096, 65535, 65536, 65537, 200000}) {
+      assertRoundTrip(randomBytes(random, length, 256));
+      assertRoundTrip(randomBytes(random, length, 4));
+      assertRoundTrip(new byte[length]);
+    }
+  }
+
+  @Test
+  public void testCompressesRepeatedData() {
+    byte[] input = new byte[4096];
+    byte[] record = "{\"name\":\"value\",\"id\":12345}".getBytes(StandardCharsets.UTF_8);
+    for (int i = 0; i < input.length; i++) {
+      input[i] = record[i % record.length];
+    }
+    byte[] output = new byte[Snappy.maxCompressedLength(input.length)];
+    assertThat(Snappy.compress(input, 0, input.length, output)).isLessThan(input.length / 10);
+    assertRoundTrip(input);
+  }
+
+  @Test
+  public void testCorrupted() {
+    // copy before any output
+    assertThrows(IllegalArgumentException.class,
+        () -> Snappy.uncompress(ByteBuffer.wrap(new byte[]{0x04, 0x0e, 0x01, 0x00})));
+    // literal longer than the input
+    assertThrows(IllegalArgumentException.class,
+        () -> Snappy.uncompress(ByteBuffer.wrap(new byte[]{0x04, 0x0c, 'a'})));
+    // output shorter than the stored length
+    assertThrows(IllegalArgumentException.class,
+        () -> Snappy.uncompress(ByteBuffer.wrap(new byte[]{0x05, 0x00, 'a'})));
+  }
+
+  private static void assertRoundTrip(byte[] input) {
+    byte[] output = new byte[Snappy.maxCompressedLength(input.length)];
+    int compressedLength = Snappy.compress(input, 0, input.length, output);
+    assertThat(compressedLength).isAtMost(output.length);
+
+    ByteBuffer compressed = ByteBuffer.wrap(output, 0, compressedLength);
+    assertThat(Snappy.uncompressedLength(compressed)).isEqualTo(input.length);
+    assertThat(toBytes(Snappy.uncompress(compressed))).isEqualTo(input);
+
+    // decompressing from a direct buffer, like a memory mapped block
+    ByteBuffer direct = ByteBuffer.allocateDirect(compressedLength);
+    direct.put(output, 0, compressedLength).flip();
+    assertThat(toBytes(Snappy.uncompress(direct))).isEqualTo(input);
+  }
+
+  private static void assertUncompress(String compressedHex, byte[] expected) throws Exception {
+    byte[] compressed = fromHex(compressedHex);
+    assertThat(toBytes(Snappy.uncompress(ByteBuffer.wrap(compressed)))).isEqualTo(expected);
+    assertThat(org.xerial.snappy.Snappy.uncompress(compressed)).isEqualTo(expected);
+  }
+
+  private static String toHex(String s) {
+    return toHex(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder();
+    for (byte b : bytes) {
+      sb.append(String.format("%02x", b & 0xff));
+    }
+    return sb.toString();
+  }
+
+  private static byte[] fromHex(String hex) {
+    byte[] bytes = new byte[hex.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+    }
+    return bytes;
+  }
+
+  private static byte[] randomBytes(Random random, int length, int alphabet) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) random.nextInt(alphabet);
+    }
+    return bytes;
+  }
+
+  private static byte[] toBytes(ByteBuffer buf) {
+    return Arrays.copyOfRange(buf.array(), buf.arrayOffset() + buf.position(),
+        buf.arrayOffset() + buf.limit());
+  }
+}
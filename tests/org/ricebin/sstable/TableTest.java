@@ -1,22 +1,42 @@
 package org.ricebin.sstable;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertThrows;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.ricebin.slice.ByteBufferSlice;
 import org.ricebin.slice.Slice;
+import org.ricebin.slice.Slice.Factory.ReusableSink;
+import org.ricebin.slice.Slice.Factory.Sink;
+import org.ricebin.slice.SliceComparator;
 
 public class TableTest {
 
@@ -36,6 +56,833 @@ public class TableTest {
 
   }
 
+  @Test
+  public void testBlockCache() throws IOException {
+    ImmutableMap<String, String> input = newInput(1000);
+    File file = writeTable(input);
+
+    BlockCache cache = new BlockCache(1 << 20);
+    Table table = Table.open(file, null, SLICE_FACTORY, new Options().blockCache(cache));
+    for (int pass = 0; pass < 2; pass++) {
+      for (Map.Entry<String, String> entry : input.entrySet()) {
+        assertThat(asString(table.get(newSlice(entry.getKey())))).isEqualTo(entry.getValue());
+      }
+      assertThat(table.get(newSlice("missing"))).isNull();
+    }
+    assertThat(cache.usage()).isGreaterThan(0L);
+    assertThat(toMap(table)).containsExactlyEntriesIn(input).inOrder();
+  }
+
+  @Test
+  public void testMapped() throws IOException {
+    ImmutableMap<String, String> input = newInput(1000);
+    File file = writeTable(input);
+
+    Table table = Table.openMapped(file, null, SLICE_FACTORY);
+    for (Map.Entry<String, String> entry : input.entrySet()) {
+      assertThat(asString(table.get(newSlice(entry.getKey())))).isEqualTo(entry.getValue());
+    }
+    assertThat(table.get(newSlice("missing"))).isNull();
+    assertThat(toMap(table)).containsExactlyEntriesIn(input).inOrder();
+
+    // blocks straddling 1KB chunk boundaries
+    Table chunked = Table.open(
+        null,
+        new MappedReadOnlyFile(new RandomAccessFile(file, "r").getChannel(), 10),
+        SLICE_FACTORY);
+    assertThat(toMap(chunked)).containsExactlyEntriesIn(input).inOrder();
+  }
+
+  @Test
+  public void testGetWithScratch() throws IOException {
+    ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+    String longPrefix = Strings.repeat("p", 300);
+    for (int i = 0; i < 1000; i += 2) {
+      builder.put(String.format("%s%06d", longPrefix, i), "value" + i);
+    }
+    ImmutableMap<String, String> input = builder.build();
+    File file = writeTable(input);
+
+    Table table = Table.open(
+        file, null, SLICE_FACTORY, new Options().blockCache(new BlockCache(1 << 20)));
+    LookupScratch scratch = new LookupScratch();
+    for (int i = 0; i < 1000; i++) {
+      String key = String.format("%s%06d", longPrefix, i);
+      boolean found = table.get(newSlice(key), scratch);
+      if (i % 2 == 0) {
+        assertThat(found).isTrue();
+        assertThat(asString(scratch.value())).isEqualTo("value" + i);
+        byte[] copy = new byte[scratch.valueLength()];
+        scratch.copyValue(copy, 0);
+        assertThat(new String(copy, Charsets.UTF_8)).isEqualTo("value" + i);
+      } else {
+        assertThat(found).isFalse();
+      }
+    }
+    assertThat(table.get(newSlice(""), scratch)).isFalse();
+    assertThat(table.get(newSlice("z"), scratch)).isFalse();
+  }
+
+  @Test
+  public void testMultiGet() throws IOException {
+    ImmutableMap<String, String> input = newInput(1000);
+    File file = writeTable(input);
+    Table table = readTable(file);
+
+    List<String> keys = new ArrayList<>(input.keySet());
+    Collections.shuffle(keys, new Random(1));
+    keys.add("missing");
+    keys.add("a");
+    keys.add("zzz");
+    keys.add(keys.get(0));
+
+    List<Slice> keySlices = new ArrayList<>();
+    for (String key : keys) {
+      keySlices.add(newSlice(key));
+    }
+    List<Slice> values = table.multiGet(keySlices);
+    assertThat(values.size()).isEqualTo(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      String expected = input.get(keys.get(i));
+      if (expected == null) {
+        assertThat(values.get(i)).isNull();
+      } else {
+        assertThat(asString(values.get(i))).isEqualTo(expected);
+      }
+    }
+
+    assertThat(table.multiGet(ImmutableList.of())).isEmpty();
+  }
+
+  @Test
+  public void testAsync() throws Exception {
+    ImmutableMap<String, String> input = newInput(1000);
+    File file = writeTable(input);
+    Table table = readTable(file);
+
+    assertThat(asString(table.getAsync(newSlice("key000123")).get())).isEqualTo("value123");
+    assertThat(table.getAsync(newSlice("missing")).get()).isNull();
+
+    List<Slice> keys = new ArrayList<>();
+    for (String key : input.keySet()) {
+      keys.add(newSlice(key));
+    }
+    keys.add(newSlice("missing"));
+    List<Slice> values = table.multiGetAsync(keys).get();
+    int i = 0;
+    for (String value : input.values()) {
+      assertThat(asString(values.get(i++))).isEqualTo(value);
+    }
+    assertThat(values.get(i)).isNull();
+
+    // with a partitioned index even grouping the keys reads the file, which has to happen on
+    // the executor and not on the calling thread
+    File partitioned = writeTable(
+        input, new Options().indexType(IndexType.TWO_LEVEL_INDEX_SEARCH), CompressionType.NONE);
+    AtomicInteger reads = new AtomicInteger();
+    Table partitionedTable = Table.open(null, countingFile(partitioned, reads), SLICE_FACTORY);
+    List<Runnable> queued = new ArrayList<>();
+    ReadExecutor executor = new ReadExecutor(queued::add, 4);
+    int readsAfterOpen = reads.get();
+    CompletableFuture<Slice> value = partitionedTable.getAsync(newSlice("key000123"), executor);
+    CompletableFuture<List<Slice>> multiValues = partitionedTable.multiGetAsync(keys, executor);
+    assertThat(reads.get()).isEqualTo(readsAfterOpen);
+    while (!queued.isEmpty()) {
+      queued.remove(0).run();
+    }
+    assertThat(asString(value.get())).isEqualTo("value123");
+    assertThat(asString(multiValues.get().get(999))).isEqualTo("value999");
+    assertThat(multiValues.get().get(1000)).isNull();
+  }
+
+  @Test
+  public void testReadaheadIterator() throws IOException {
+    ImmutableMap<String, String> input = newInput(5000);
+    File file = writeTable(input);
+    Table table = readTable(file);
+
+    assertThat(toMap(table.readaheadIterator(newSlice(""))))
+        .containsExactlyEntriesIn(input).inOrder();
+
+    ImmutableMap<String, String> expected = toMap(table.iterator(newSlice("key002500")));
+    assertThat(expected).hasSize(2500);
+    assertThat(toMap(table.readaheadIterator(newSlice("key002500"))))
+        .containsExactlyEntriesIn(expected).inOrder();
+
+    assertThat(table.readaheadIterator(newSlice("zzz")).hasNext()).isFalse();
+    assertThat(toMap(table.readaheadIterator(null))).containsExactlyEntriesIn(input).inOrder();
+  }
+
+  @Test
+  public void testCloseReadaheadIterator() throws IOException {
+    File file = writeTable(newInput(5000));
+    AtomicInteger reads = new AtomicInteger();
+    Table table = Table.open(null, countingFile(file, reads), SLICE_FACTORY);
+
+    // the first read runs right away, later ones wait until they are run by hand
+    List<Runnable> queued = new ArrayList<>();
+    AtomicBoolean runNext = new AtomicBoolean(true);
+    ReadExecutor executor = new ReadExecutor(task -> {
+      if (runNext.getAndSet(false)) {
+        task.run();
+      } else {
+        queued.add(task);
+      }
+    }, 4);
+    CloseableIterator<Entry<Slice, Slice>> it = table.readaheadIterator(null, executor);
+    assertThat(asString(it.next().getKey())).isEqualTo("key000000");
+    assertThat(queued).isNotEmpty();
+    int readsBeforeClose = reads.get();
+
+    it.close();
+    assertThat(it.hasNext()).isFalse();
+    for (Runnable task : queued) {
+      task.run();
+    }
+    assertThat(reads.get()).isEqualTo(readsBeforeClose);
+  }
+
+  @Test
+  public void testPartitionedIndex() throws IOException {
+    // long keys that differ early, so the index spans many partitions
+    ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+    String longSuffix = Strings.repeat("k", 200);
+    for (int i = 0; i < 5000; i++) {
+      builder.put(String.format("%06d%s", i, longSuffix), "value" + i);
+    }
+    ImmutableMap<String, String> input = builder.build();
+    File file = writeTable(input, new Options().indexType(IndexType.TWO_LEVEL_INDEX_SEARCH));
+
+    for (Options options : ImmutableList.of(
+        new Options(), new Options().blockCache(new BlockCache(1 << 20)))) {
+      Table table = Table.open(file, null, SLICE_FACTORY, options);
+      assertThat(toMap(table)).containsExactlyEntriesIn(input).inOrder();
+
+      LookupScratch scratch = new LookupScratch();
+      for (int i = 0; i < 5000; i += 7) {
+        String key = String.format("%06d%s", i, longSuffix);
+        assertThat(table.get(newSlice(key), scratch)).isTrue();
+        assertThat(asString(scratch.value())).isEqualTo("value" + i);
+        assertThat(table.get(newSlice(key + "x"), scratch)).isFalse();
+      }
+      assertThat(table.get(newSlice("zzz"), scratch)).isFalse();
+
+      String midKey = String.format("%06d%s", 2500, longSuffix);
+      Iterator<Entry<Slice, Slice>> it = table.iterator(newSlice(midKey));
+      assertThat(asString(it.next().getKey())).isEqualTo(midKey);
+
+      List<Slice> values = table.multiGet(ImmutableList.of(newSlice(midKey), newSlice("a")));
+      assertThat(asString(values.get(0))).isEqualTo("value2500");
+      assertThat(values.get(1)).isNull();
+    }
+  }
+
+  @Test
+  public void testPartitionedIndexWithFilter() throws IOException {
+    // index partitions are written between data blocks, the filter has to see the offsets the
+    // data blocks end up at
+    ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+    String longSuffix = Strings.repeat("k", 200);
+    for (int i = 0; i < 20000; i++) {
+      builder.put(String.format("%06d%s", i, longSuffix), "value" + i);
+    }
+    ImmutableMap<String, String> input = builder.build();
+
+    Options options = new Options()
+        .indexType(IndexType.TWO_LEVEL_INDEX_SEARCH)
+        .filterPolicy(BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getWriter(10));
+    for (File file : ImmutableList.of(
+        writeTable(input, options, CompressionType.SNAPPY),
+        writeTable(input, options.parallelCompression(4), CompressionType.SNAPPY))) {
+      Table table = Table.open(
+          file, BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getReader(), SLICE_FACTORY);
+      for (Map.Entry<String, String> entry : input.entrySet()) {
+        assertThat(asString(table.get(newSlice(entry.getKey())))).isEqualTo(entry.getValue());
+      }
+    }
+  }
+
+  @Test
+  public void testCustomComparator() throws IOException {
+    // reverse bytewise order, lookups have to follow the comparator instead of comparing bytes
+    SliceComparator<ByteBufferSlice> reverse = new SliceComparator<ByteBufferSlice>() {
+      @Override
+      public int compare(ByteBufferSlice a, ByteBufferSlice b) {
+        return b.compareTo(a);
+      }
+    };
+    Slice.Factory<ByteBufferSlice> factory = new Slice.Factory<ByteBufferSlice>() {
+      @Override
+      public Sink<ByteBufferSlice> newFixedSizeSink(int size) {
+        return SLICE_FACTORY.newFixedSizeSink(size);
+      }
+
+      @Override
+      public ReusableSink<ByteBufferSlice> newDynamicSink(int initialSize) {
+        return SLICE_FACTORY.newDynamicSink(initialSize);
+      }
+
+      @Override
+      public ByteBufferSlice wrap(ByteBuffer buf) {
+        return SLICE_FACTORY.wrap(buf);
+      }
+
+      @Override
+      public ByteBufferSlice wrap(byte[] buf, int offset, int len) {
+        return SLICE_FACTORY.wrap(buf, offset, len);
+      }
+
+      @Override
+      public ByteBufferSlice empty() {
+        return SLICE_FACTORY.empty();
+      }
+
+      @Override
+      public SliceComparator<ByteBufferSlice> comparator() {
+        return reverse;
+      }
+    };
+
+    List<String> keys = new ArrayList<>(newInput(5000).keySet());
+    Collections.reverse(keys);
+    File file = tempDir.newFile();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      TableBuilder builder = new TableBuilder(factory, raf.getChannel(), CompressionType.NONE,
+          new Options()
+              .indexType(IndexType.TWO_LEVEL_INDEX_SEARCH)
+              .filterPolicy(BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getWriter(10)));
+      for (String key : keys) {
+        builder.add(newSlice(key), newSlice("v" + key));
+      }
+      builder.finish();
+    }
+
+    for (Options options : ImmutableList.of(new Options(), new Options().flatIndex(true))) {
+      Table table = Table.open(
+          file, BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getReader(), factory, options);
+      LookupScratch scratch = new LookupScratch();
+      for (String key : keys) {
+        assertThat(asString(table.get(newSlice(key)))).isEqualTo("v" + key);
+        assertThat(table.get(newSlice(key), scratch)).isTrue();
+      }
+      assertThat(table.get(newSlice("key0025000"), scratch)).isFalse();
+    }
+  }
+
+  @Test
+  public void testDataBlockHashIndex() throws IOException {
+    ImmutableMap<String, String> input = newInput(5000);
+    File file = writeTable(input, new Options().dataBlockHashIndex(true));
+    File plainFile = writeTable(input);
+    assertThat(file.length()).isGreaterThan(plainFile.length());
+
+    Table table = Table.open(file, null, SLICE_FACTORY);
+    assertThat(toMap(table)).containsExactlyEntriesIn(input).inOrder();
+
+    LookupScratch scratch = new LookupScratch();
+    for (int i = 0; i < 5000; i++) {
+      String key = String.format("key%06d", i);
+      assertThat(table.get(newSlice(key), scratch)).isTrue();
+      assertThat(asString(scratch.value())).isEqualTo("value" + i);
+      assertThat(table.get(newSlice(key + "x"), scratch)).isFalse();
+    }
+    assertThat(table.get(newSlice("a"), scratch)).isFalse();
+    assertThat(table.get(newSlice("zzz"), scratch)).isFalse();
+
+    Iterator<Entry<Slice, Slice>> it = table.iterator(newSlice("key002500"));
+    assertThat(asString(it.next().getKey())).isEqualTo("key002500");
+    assertThat(asString(table.multiGet(ImmutableList.of(newSlice("key004999"))).get(0)))
+        .isEqualTo("value4999");
+  }
+
+  @Test
+  public void testFlatIndex() throws IOException {
+    ImmutableMap<String, String> input = newInput(5000);
+    for (IndexType indexType : IndexType.values()) {
+      File file = writeTable(input, new Options().indexType(indexType));
+      Table table = Table.open(file, null, SLICE_FACTORY, new Options().flatIndex(true));
+      assertThat(table.indexMemoryUsage()).isGreaterThan(0L);
+      assertThat(toMap(table)).containsExactlyEntriesIn(input).inOrder();
+
+      LookupScratch scratch = new LookupScratch();
+      for (int i = 0; i < 5000; i += 3) {
+        String key = String.format("key%06d", i);
+        assertThat(table.get(newSlice(key), scratch)).isTrue();
+        assertThat(asString(scratch.value())).isEqualTo("value" + i);
+      }
+      assertThat(table.get(newSlice("a"), scratch)).isFalse();
+      assertThat(table.get(newSlice("zzz"), scratch)).isFalse();
+
+      Iterator<Entry<Slice, Slice>> it = table.iterator(newSlice("key002500x"));
+      assertThat(asString(it.next().getKey())).isEqualTo("key002501");
+      List<Slice> values = table.multiGet(ImmutableList.of(newSlice("key000042"), newSlice("zzz")));
+      assertThat(asString(values.get(0))).isEqualTo("value42");
+      assertThat(values.get(1)).isNull();
+    }
+  }
+
+  @Test
+  public void testCursor() throws IOException {
+    ImmutableMap<String, String> input = newInput(5000);
+    for (IndexType indexType : IndexType.values()) {
+      File file = writeTable(input, new Options().indexType(indexType));
+      for (Options options : ImmutableList.of(new Options(), new Options().flatIndex(true))) {
+        Table table = Table.open(file, null, SLICE_FACTORY, options);
+        Cursor<Slice> cursor = table.cursor();
+
+        int count = 0;
+        for (cursor.seekToFirst(); cursor.isValid(); cursor.next()) {
+          assertThat(asString(cursor.key())).isEqualTo(String.format("key%06d", count));
+          count++;
+        }
+        assertThat(count).isEqualTo(5000);
+
+        cursor.seek(newSlice("key002500x"));
+        assertThat(asString(cursor.key())).isEqualTo("key002501");
+        assertThat(asString(cursor.value())).isEqualTo("value2501");
+        cursor.next();
+        assertThat(asString(cursor.key())).isEqualTo("key002502");
+
+        cursor.seek(newSlice("key004999"));
+        cursor.next();
+        assertThat(cursor.isValid()).isFalse();
+        cursor.seek(newSlice("zzz"));
+        assertThat(cursor.isValid()).isFalse();
+      }
+    }
+  }
+
+  @Test
+  public void testReverseIterator() throws IOException {
+    ImmutableMap<String, String> input = newInput(5000);
+    for (Options writeOptions : ImmutableList.of(
+        new Options(),
+        new Options().indexType(IndexType.TWO_LEVEL_INDEX_SEARCH),
+        new Options().dataBlockHashIndex(true))) {
+      File file = writeTable(input, writeOptions);
+      for (Options options : ImmutableList.of(new Options(), new Options().flatIndex(true))) {
+        Table table = Table.open(file, null, SLICE_FACTORY, options);
+
+        List<String> keys = new ArrayList<>();
+        Iterator<Entry<Slice, Slice>> it = table.reverseIterator();
+        while (it.hasNext()) {
+          keys.add(asString(it.next().getKey()));
+        }
+        List<String> expected = new ArrayList<>(input.keySet());
+        Collections.reverse(expected);
+        assertThat(keys).containsExactlyElementsIn(expected).inOrder();
+
+        it = table.reverseIterator(newSlice("key002500"));
+        Entry<Slice, Slice> entry = it.next();
+        assertThat(asString(entry.getKey())).isEqualTo("key002500");
+        assertThat(asString(entry.getValue())).isEqualTo("value2500");
+        assertThat(asString(it.next().getKey())).isEqualTo("key002499");
+
+        it = table.reverseIterator(newSlice("key002500x"));
+        assertThat(asString(it.next().getKey())).isEqualTo("key002500");
+        it = table.reverseIterator(newSlice("zzz"));
+        assertThat(asString(it.next().getKey())).isEqualTo("key004999");
+        assertThat(table.reverseIterator(newSlice("a")).hasNext()).isFalse();
+
+        // change direction in the middle of a block and across blocks
+        Cursor<Slice> cursor = table.cursor();
+        cursor.seek(newSlice("key001000"));
+        for (int i = 1000; i > 0; i--) {
+          cursor.prev();
+        }
+        assertThat(asString(cursor.key())).isEqualTo("key000000");
+        cursor.prev();
+        assertThat(cursor.isValid()).isFalse();
+      }
+    }
+  }
+
+  @Test
+  public void testBoundedIterator() throws IOException {
+    ImmutableMap<String, String> input = newInput(5000);
+    File file = writeTable(input);
+    AtomicInteger reads = new AtomicInteger();
+    ReadOnlyFile countingFile = countingFile(file, reads);
+    Table table = Table.open(null, countingFile, SLICE_FACTORY);
+
+    assertThat(keys(table.iterator(newSlice("key001000"), newSlice("key001003"))))
+        .containsExactly("key001000", "key001001", "key001002").inOrder();
+    assertThat(keys(table.iterator(newSlice("key001000"), false, newSlice("key001003"), true)))
+        .containsExactly("key001001", "key001002", "key001003").inOrder();
+    assertThat(keys(table.iterator(null, false, newSlice("key000002"), true)))
+        .containsExactly("key000000", "key000001", "key000002").inOrder();
+    assertThat(keys(table.iterator(newSlice("key004998"), true, null, false)))
+        .containsExactly("key004998", "key004999").inOrder();
+    assertThat(keys(table.iterator(newSlice("key001000"), newSlice("key001000")))).isEmpty();
+    assertThat(toMap(table.iterator(null, null))).containsExactlyEntriesIn(input).inOrder();
+
+    // the range ends inside the first block it touches, so nothing else is read
+    reads.set(0);
+    Iterator<Entry<Slice, Slice>> it =
+        table.iterator(newSlice("key001000"), true, newSlice("key001000"), true);
+    assertThat(asString(it.next().getKey())).isEqualTo("key001000");
+    assertThat(it.hasNext()).isFalse();
+    assertThat(reads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testFilterBlock() throws IOException {
+    ImmutableMap<String, String> input = newInput(5000);
+    File file = writeTable(
+        input,
+        new Options().filterPolicy(BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getWriter(10)));
+    AtomicInteger reads = new AtomicInteger();
+    ReadOnlyFile countingFile = countingFile(file, reads);
+    Table table = Table.open(
+        BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getReader(), countingFile, SLICE_FACTORY);
+    assertThat(table.filterBlock).isNotNull();
+    assertThat(toMap(table)).containsExactlyEntriesIn(input).inOrder();
+
+    for (Map.Entry<String, String> entry : input.entrySet()) {
+      assertThat(asString(table.get(newSlice(entry.getKey())))).isEqualTo(entry.getValue());
+    }
+
+    // absent keys that fall inside the key range of a block are mostly rejected without a read
+    reads.set(0);
+    for (int i = 0; i < 5000; i++) {
+      assertThat(table.get(newSlice(String.format("key%06d.", i)))).isNull();
+    }
+    assertThat(reads.get()).isLessThan(100);
+  }
+
+  @Test
+  public void testFullFilter() throws IOException {
+    ImmutableMap<String, String> input = newInput(5000);
+    File file = writeTable(
+        input,
+        new Options()
+            .indexType(IndexType.TWO_LEVEL_INDEX_SEARCH)
+            .filterPolicy(BinaryFuseFilterPolicy.BINARY_FUSE8_FILTER.getWriter())
+            .fullFilter(true));
+    AtomicInteger reads = new AtomicInteger();
+    ReadOnlyFile countingFile = countingFile(file, reads);
+    Table table = Table.open(
+        BinaryFuseFilterPolicy.BINARY_FUSE8_FILTER.getReader(), countingFile, SLICE_FACTORY);
+    assertThat(table.fullFilter).isNotNull();
+    assertThat(table.filterBlock).isNull();
+
+    for (Map.Entry<String, String> entry : input.entrySet()) {
+      assertThat(asString(table.get(newSlice(entry.getKey())))).isEqualTo(entry.getValue());
+    }
+    List<Slice> values = table.multiGet(
+        ImmutableList.of(newSlice("key000007"), newSlice("key000007."), newSlice("key004999")));
+    assertThat(asString(values.get(0))).isEqualTo("value7");
+    assertThat(values.get(1)).isNull();
+    assertThat(asString(values.get(2))).isEqualTo("value4999");
+
+    // absent keys are mostly rejected before an index partition or data block is read
+    reads.set(0);
+    for (int i = 0; i < 5000; i++) {
+      assertThat(table.get(newSlice(String.format("key%06d.", i)))).isNull();
+    }
+    assertThat(reads.get()).isLessThan(100);
+  }
+
+  @Test
+  public void testPrefixIterator() throws IOException {
+    testPrefixIterator(false);
+    testPrefixIterator(true);
+  }
+
+  private void testPrefixIterator(boolean fullFilter) throws IOException {
+    // only even tenants have keys
+    ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+    for (int tenant = 0; tenant < 200; tenant += 2) {
+      for (int entity = 0; entity < 20; entity++) {
+        builder.put(String.format("t%03d/e%02d/ts", tenant, entity), "value");
+      }
+    }
+    ImmutableMap<String, String> input = builder.build();
+    PrefixExtractor prefixExtractor = PrefixExtractor.delimited('/', 1);
+    File file = writeTable(
+        input,
+        new Options()
+            .filterPolicy(BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getWriter(10))
+            .fullFilter(fullFilter)
+            .prefixExtractor(prefixExtractor));
+    AtomicInteger reads = new AtomicInteger();
+    ReadOnlyFile countingFile = countingFile(file, reads);
+    Table table = Table.open(
+        BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getReader(),
+        countingFile,
+        SLICE_FACTORY,
+        new Options().prefixExtractor(prefixExtractor));
+
+    assertThat(keys(table.prefixIterator(newSlice("t042/")))).hasSize(20);
+    assertThat(keys(table.prefixIterator(newSlice("t042/e07/"))))
+        .containsExactly("t042/e07/ts");
+    assertThat(keys(table.prefixIterator(newSlice("t198/")))).hasSize(20);
+
+    // absent prefixes are mostly rejected without reading a data block
+    reads.set(0);
+    for (int tenant = 1; tenant < 200; tenant += 2) {
+      assertThat(keys(table.prefixIterator(newSlice(String.format("t%03d/", tenant))))).isEmpty();
+    }
+    assertThat(reads.get()).isLessThan(10);
+
+    // a table opened without the extractor still scans the prefix
+    Table unfiltered = Table.open(
+        BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getReader(), countingFile, SLICE_FACTORY);
+    reads.set(0);
+    assertThat(keys(unfiltered.prefixIterator(newSlice("t001/")))).isEmpty();
+    assertThat(reads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testSnappy() throws IOException {
+    ImmutableMap<String, String> input = newInput(5000);
+    File uncompressed = writeTable(input);
+    File file = writeTable(
+        input, new Options().indexType(IndexType.TWO_LEVEL_INDEX_SEARCH), CompressionType.SNAPPY);
+    assertThat(file.length()).isLessThan(uncompressed.length() / 2);
+
+    Table table = readTable(file);
+    assertThat(toMap(table)).containsExactlyEntriesIn(input).inOrder();
+    assertThat(asString(table.get(newSlice("key001234")))).isEqualTo("value1234");
+    assertThat(toMap(table.readaheadIterator(newSlice("key004000"))))
+        .containsExactlyEntriesIn(Maps.filterKeys(input, k -> k.compareTo("key004000") >= 0))
+        .inOrder();
+
+    Table mapped = Table.openMapped(file, null, SLICE_FACTORY);
+    assertThat(toMap(mapped)).containsExactlyEntriesIn(input).inOrder();
+  }
+
+  @Test
+  public void testSnappyIncompressible() throws IOException {
+    Random random = new Random(301);
+    ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+    for (int i = 0; i < 1000; i++) {
+      byte[] value = new byte[100];
+      random.nextBytes(value);
+      builder.put(String.format("key%06d", i), Base64.getEncoder().encodeToString(value));
+    }
+    ImmutableMap<String, String> input = builder.build();
+
+    // blocks that compress by less than 12.5% are stored uncompressed
+    File uncompressed = writeTable(input);
+    File file = writeTable(input, new Options(), CompressionType.SNAPPY);
+    assertThat(file.length()).isAtMost(uncompressed.length());
+    assertThat(toMap(readTable(file))).containsExactlyEntriesIn(input).inOrder();
+  }
+
+  @Test
+  public void testZstd() throws IOException {
+    ImmutableMap<String, String> input = newInput(5000);
+    File file = writeTable(input, new Options(), CompressionType.ZSTD);
+    assertThat(file.length()).isLessThan(writeTable(input).length() / 2);
+
+    assertThat(toMap(readTable(file))).containsExactlyEntriesIn(input).inOrder();
+    assertThat(toMap(Table.openMapped(file, null, SLICE_FACTORY)))
+        .containsExactlyEntriesIn(input).inOrder();
+  }
+
+  @Test
+  public void testZstdDictionary() throws IOException {
+    Random random = new Random(301);
+    ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+    for (int i = 0; i < 20000; i++) {
+      builder.put(
+          String.format("key%06d", i),
+          String.format(
+              "{\"id\":%d,\"status\":\"%s\",\"region\":\"%s\",\"score\":%d}",
+              random.nextInt(1000000),
+              random.nextBoolean() ? "active" : "suspended",
+              random.nextBoolean() ? "us-east-1" : "eu-west-1",
+              random.nextInt(100)));
+    }
+    ImmutableMap<String, String> input = builder.build();
+
+    Options options = new Options()
+        .maxDictBytes(4096)
+        .filterPolicy(BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getWriter(10));
+    File withoutDict = writeTable(input, options.maxDictBytes(0), CompressionType.ZSTD);
+    File file = writeTable(input, options.maxDictBytes(4096), CompressionType.ZSTD);
+    assertThat(file.length()).isLessThan(withoutDict.length());
+
+    Table table = Table.open(
+        file, BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getReader(), SLICE_FACTORY);
+    assertThat(toMap(table)).containsExactlyEntriesIn(input).inOrder();
+    for (int i = 0; i < 20000; i += 97) {
+      String key = String.format("key%06d", i);
+      assertThat(asString(table.get(newSlice(key)))).isEqualTo(input.get(key));
+      assertThat(table.mayExists(newSlice(key))).isTrue();
+    }
+    assertThat(toMap(table.readaheadIterator(newSlice("key019000"))))
+        .containsExactlyEntriesIn(Maps.filterKeys(input, k -> k.compareTo("key019000") >= 0))
+        .inOrder();
+
+    // a table smaller than the sample size is compressed with a dictionary from all its blocks
+    ImmutableMap<String, String> small = ImmutableMap.copyOf(
+        Maps.filterKeys(input, k -> k.compareTo("key002000") < 0));
+    assertThat(toMap(readTable(writeTable(small, options, CompressionType.ZSTD))))
+        .containsExactlyEntriesIn(small).inOrder();
+  }
+
+  @Test
+  public void testVerifyChecksums() throws IOException {
+    ImmutableMap<String, String> input = newInput(5000);
+    File file = writeTable(
+        input,
+        new Options().filterPolicy(BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getWriter(10)),
+        CompressionType.SNAPPY);
+    Options options = new Options().verifyChecksums(true);
+    Table table = Table.open(
+        file, BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getReader(), SLICE_FACTORY, options);
+    assertThat(toMap(table)).containsExactlyEntriesIn(input).inOrder();
+
+    Table cached = Table.open(
+        file, null, SLICE_FACTORY, options.blockCache(new BlockCache(1 << 20)));
+    assertThat(asString(cached.get(newSlice("key000000")))).isEqualTo("value0");
+
+    // flip a byte of the first data block
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(10);
+      int b = raf.read();
+      raf.seek(10);
+      raf.write(b ^ 0xff);
+    }
+
+    Table corrupted = Table.open(file, null, SLICE_FACTORY, new Options().verifyChecksums(true));
+    IllegalStateException e = assertThrows(
+        IllegalStateException.class, () -> corrupted.get(newSlice("key000000")));
+    assertThat(e.getMessage()).isEqualTo("block checksum mismatch");
+    // other blocks are still readable
+    assertThat(asString(corrupted.get(newSlice("key004999")))).isEqualTo("value4999");
+
+    // the cached block was verified when it was read and is not checked again
+    assertThat(asString(cached.get(newSlice("key000000")))).isEqualTo("value0");
+  }
+
+  @Test
+  public void testParallelCompression() throws IOException {
+    ImmutableMap<String, String> input = newInput(20000);
+    Options options = new Options()
+        .indexType(IndexType.TWO_LEVEL_INDEX_SEARCH)
+        .filterPolicy(BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getWriter(10))
+        .prefixExtractor(PrefixExtractor.fixedLength(6));
+    File serial = writeTable(input, options, CompressionType.SNAPPY);
+    File parallel = writeTable(input, options.parallelCompression(4), CompressionType.SNAPPY);
+    // blocks are written in order, with the same handles, filters and index
+    assertThat(Files.readAllBytes(parallel.toPath()))
+        .isEqualTo(Files.readAllBytes(serial.toPath()));
+
+    Table table = Table.open(
+        parallel, BloomFilterPolicy.LEVELDB_BUILTIN_BLOOM_FILTER2.getReader(), SLICE_FACTORY,
+        options);
+    assertThat(toMap(table)).containsExactlyEntriesIn(input).inOrder();
+
+    // held back blocks of a dictionary compressed table go through the same pipeline
+    options = new Options()
+        .maxDictBytes(1024)
+        .filterPolicy(BinaryFuseFilterPolicy.BINARY_FUSE8_FILTER.getWriter())
+        .fullFilter(true);
+    serial = writeTable(input, options, CompressionType.ZSTD);
+    parallel = writeTable(input, options.parallelCompression(3), CompressionType.ZSTD);
+    assertThat(Files.readAllBytes(parallel.toPath()))
+        .isEqualTo(Files.readAllBytes(serial.toPath()));
+  }
+
+  @Test
+  public void testWriteBuffer() throws IOException {
+    ImmutableMap<String, String> input = newInput(5000);
+    File file = writeTable(input);
+    // blocks larger than the buffer, and syncs every few blocks
+    File unbuffered = writeTable(input, new Options().writeBufferSize(64).bytesPerSync(10000));
+    assertThat(Files.readAllBytes(unbuffered.toPath()))
+        .isEqualTo(Files.readAllBytes(file.toPath()));
+    assertThat(toMap(readTable(unbuffered))).containsExactlyEntriesIn(input).inOrder();
+  }
+
+  @Test
+  public void testApproximateOffsetOf() throws IOException {
+    ImmutableMap<String, String> input = newInput(5000);
+    File file = writeTable(input);
+    Table table = readTable(file);
+
+    long end = table.approximateOffsetOf(newSlice("zzz"));
+    assertThat(table.approximateOffsetOf(newSlice("a"))).isEqualTo(0L);
+    assertThat(end).isGreaterThan(0L);
+    assertThat(end).isAtMost(file.length());
+
+    long prev = 0;
+    for (int i = 0; i < 5000; i += 100) {
+      long offset = table.approximateOffsetOf(newSlice(String.format("key%06d", i)));
+      assertThat(offset).isAtLeast(prev);
+      prev = offset;
+    }
+
+    long half = table.approximateSize(newSlice("key000000"), newSlice("key002500"));
+    assertThat((double) half / end).isWithin(0.05).of(0.5);
+    assertThat(table.approximateSize(newSlice("key002500"), newSlice("key000000")))
+        .isEqualTo(0L);
+
+    assertThat(table.approximateSplitKeys(1)).isEmpty();
+    List<Slice> splitKeys = table.approximateSplitKeys(4);
+    assertThat(splitKeys).hasSize(3);
+    Slice lower = null;
+    for (Slice splitKey : splitKeys) {
+      int count = keys(table.iterator(lower, false, splitKey, true)).size();
+      assertThat((double) count).isWithin(200).of(1250);
+      lower = splitKey;
+    }
+    assertThat((double) keys(table.iterator(lower, false, null, false)).size())
+        .isWithin(200).of(1250);
+  }
+
+  @Test
+  public void testStream() throws IOException {
+    ImmutableMap<String, String> input = newInput(5000);
+    File file = writeTable(input);
+    Table table = readTable(file);
+
+    assertThat(table.stream(null, null).map(e -> asString(e.getKey())).collect(toList()))
+        .containsExactlyElementsIn(input.keySet()).inOrder();
+    assertThat(table.stream(null, null).parallel()
+        .collect(Collectors.toMap(e -> asString(e.getKey()), e -> asString(e.getValue()))))
+        .containsExactlyEntriesIn(input);
+    assertThat(table.stream(newSlice("key001000"), newSlice("key004000")).parallel().count())
+        .isEqualTo(3000L);
+    assertThat(table.stream(newSlice("key004999x"), null).count()).isEqualTo(0L);
+
+    Spliterator<Entry<Slice, Slice>> spliterator =
+        table.spliterator(newSlice("key000100"), newSlice("key004900"));
+    assertThat(spliterator.hasCharacteristics(Spliterator.SORTED)).isTrue();
+    long size = spliterator.estimateSize();
+
+    // split after reading an entry, the prefix keeps the partially read block
+    List<String> keys = new ArrayList<>();
+    spliterator.tryAdvance(e -> keys.add(asString(e.getKey())));
+    Spliterator<Entry<Slice, Slice>> prefix = spliterator.trySplit();
+    assertThat(prefix).isNotNull();
+    assertThat(prefix.estimateSize() + spliterator.estimateSize()).isEqualTo(size);
+    prefix.forEachRemaining(e -> keys.add(asString(e.getKey())));
+    spliterator.forEachRemaining(e -> keys.add(asString(e.getKey())));
+    assertThat(keys)
+        .containsExactlyElementsIn(input.keySet().asList().subList(100, 4900))
+        .inOrder();
+  }
+
+  private static List<String> keys(Iterator<Entry<Slice, Slice>> it) {
+    List<String> keys = new ArrayList<>();
+    while (it.hasNext()) {
+      keys.add(asString(it.next().getKey()));
+    }
+    return keys;
+  }
+
+  private static ImmutableMap<String, String> newInput(int size) {
+    ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+    for (int i = 0; i < size; i++) {
+      builder.put(String.format("key%06d", i), "value" + i);
+    }
+    return builder.build();
+  }
+
   private void assertTable(ImmutableMap<String, String> input) throws IOException {
     File file = writeTable(input);
 
@@ -46,8 +893,11 @@ public class TableTest {
   }
 
   private static ImmutableMap<String, String> toMap(Table table) {
+    return toMap(table.iterator());
+  }
+
+  private static ImmutableMap<String, String> toMap(Iterator<Entry<Slice, Slice>> it) {
     ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
-    Iterator<Entry<Slice, Slice>> it = table.iterator();
     while (it.hasNext()) {
       Entry<Slice, Slice> next = it.next();
       builder.put(asString(next.getKey()), asString(next.getValue()));
@@ -55,18 +905,40 @@ public class TableTest {
     return builder.build();
   }
 
+  // counts the reads that go to the file
+  private static ReadOnlyFile countingFile(File file, AtomicInteger reads) throws IOException {
+    return new FileChannelReadOnlyFile(new RandomAccessFile(file, "r").getChannel()) {
+      @Override
+      public ByteBuffer readFully(long pos, int len) throws IOException {
+        reads.incrementAndGet();
+        return super.readFully(pos, len);
+      }
+    };
+  }
+
   private Table readTable(File file) throws IOException {
     return Table.openWithoutFilter(file, SLICE_FACTORY);
   }
 
   private File writeTable(ImmutableMap<String, String> input) throws IOException {
+    return writeTable(input, new Options());
+  }
+
+  private File writeTable(ImmutableMap<String, String> input, Options options)
+      throws IOException {
+    return writeTable(input, options, CompressionType.NONE);
+  }
+
+  private File writeTable(
+      ImmutableMap<String, String> input, Options options, CompressionType compressionType)
+      throws IOException {
     File file = tempDir.newFile();
 
     RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
     FileChannel fc = randomAccessFile.getChannel();
 
     TableBuilder builder =
-        new TableBuilder(SLICE_FACTORY, fc, CompressionType.NONE);
+        new TableBuilder(SLICE_FACTORY, fc, compressionType, options);
 
     for (Map.Entry<String, String> entry : input.entrySet()) {
       builder.add(newSlice(entry.getKey()), newSlice(entry.getValue()));
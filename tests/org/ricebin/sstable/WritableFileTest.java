@@ -0,0 +1,59 @@
+package org.ricebin.sstable;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WritableFileTest {
+
+  @Rule
+  public final TemporaryFolder tempDir = new TemporaryFolder();
+
+  @Test
+  public void testAppend() throws IOException {
+    File file = tempDir.newFile();
+    Random random = new Random(301);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      WritableFile writableFile = new WritableFile(raf.getChannel(), 100, 0);
+      // buffered, filling the buffer exactly, gathered with the buffer, and larger than it
+      for (int length : new int[]{5, 95, 0, 30, 80, 250, 5, 100, 1, 1000, 7}) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        assertThat(writableFile.append(ByteBuffer.wrap(data))).isEqualTo(length);
+        expected.write(data);
+        assertThat(writableFile.position()).isEqualTo((long) expected.size());
+      }
+      // the last bytes are still buffered
+      assertThat(raf.length()).isEqualTo(expected.size() - 7L);
+      writableFile.flush();
+    }
+    assertThat(Files.readAllBytes(file.toPath())).isEqualTo(expected.toByteArray());
+  }
+
+  @Test
+  public void testAppendAtChannelPosition() throws IOException {
+    File file = tempDir.newFile();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      FileChannel channel = raf.getChannel();
+      channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+      WritableFile writableFile = new WritableFile(channel, 16, 8);
+      assertThat(writableFile.position()).isEqualTo(3L);
+      writableFile.append(ByteBuffer.wrap(new byte[20]));
+      writableFile.append(ByteBuffer.wrap(new byte[]{4}));
+      assertThat(writableFile.position()).isEqualTo(24L);
+      writableFile.flush();
+      assertThat(channel.size()).isEqualTo(24L);
+    }
+  }
+}